@@ -0,0 +1,128 @@
+package com.igot.cb.discussion.consumer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.igot.cb.discussion.service.AuthorProfileResolver;
+import com.igot.cb.pores.cache.SearchCacheIndex;
+import com.igot.cb.pores.elasticsearch.service.EsUtilService;
+import com.igot.cb.pores.util.CbServerProperties;
+import com.igot.cb.pores.util.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the author snapshots stored in the discussion documents in step with the
+ * profiles of their authors. On every profile change the current profile is read and
+ * written into all discussions of the user with a single update by query, which runs
+ * as a task on the cluster so that the listener thread never waits for it. Once the
+ * task completed, the cached search pages showing the user are evicted.
+ */
+@Component
+@Slf4j
+public class AuthorProfileUpdateConsumer {
+
+    private static final String UPDATE_SNAPSHOT_SCRIPT =
+            "ctx._source." + Constants.AUTHOR_SNAPSHOT + " = params." + Constants.AUTHOR_SNAPSHOT + "; "
+                    + "ctx._source." + Constants.AUTHOR_SNAPSHOT_ON + " = params." + Constants.AUTHOR_SNAPSHOT_ON;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private AuthorProfileResolver authorProfileResolver;
+    @Autowired
+    private EsUtilService esUtilService;
+    @Autowired
+    private CbServerProperties cbServerProperties;
+    @Autowired
+    private SearchCacheIndex searchCacheIndex;
+
+    @Value("${discussion.author.snapshot.taskPollInterval}")
+    private long taskPollInterval;
+
+    @Value("${discussion.author.snapshot.taskMaxPolls}")
+    private int taskMaxPolls;
+
+    /** Waits for the update tasks to complete before evicting the affected search pages. */
+    private ScheduledExecutorService taskPoller;
+
+    @PostConstruct
+    public void init() {
+        taskPoller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "author-snapshot-task-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        taskPoller.shutdownNow();
+    }
+
+    @KafkaListener(topics = "${kafka.topic.user.profile.update}", groupId = "${kafka.group.discussion.author.snapshot}")
+    public void onProfileUpdate(ConsumerRecord<String, String> record) {
+        try {
+            JsonNode event = objectMapper.readTree(record.value());
+            String userId = event.path(Constants.USER_ID_RQST).asText();
+            if (StringUtils.isBlank(userId)) {
+                log.warn("AuthorProfileUpdateConsumer::onProfileUpdate: event without {} at offset {}",
+                        Constants.USER_ID_RQST, record.offset());
+                return;
+            }
+            Map<String, Object> profile = authorProfileResolver.refresh(userId);
+            if (profile == null) {
+                log.warn("AuthorProfileUpdateConsumer::onProfileUpdate: user {} not found", userId);
+                return;
+            }
+            Map<String, Object> params = new HashMap<>();
+            params.put(Constants.AUTHOR_SNAPSHOT, profile);
+            params.put(Constants.AUTHOR_SNAPSHOT_ON, System.currentTimeMillis());
+            String taskId = esUtilService.updateDocumentsByQuery(cbServerProperties.getDiscussionEntity(),
+                    QueryBuilders.termQuery(Constants.CREATED_BY, userId),
+                    new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, UPDATE_SNAPSHOT_SCRIPT, params));
+            log.info("AuthorProfileUpdateConsumer::onProfileUpdate: updating the author snapshots of {}, task {}", userId, taskId);
+            evictWhenCompleted(taskId, userId, 0);
+        } catch (Exception e) {
+            log.error("AuthorProfileUpdateConsumer::onProfileUpdate: failed to process event at offset {}: {}",
+                    record.offset(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Evicts the search pages showing the user once the task completed, or after the
+     * maximum number of polls, so that pages are not cached with the old profile again.
+     */
+    private void evictWhenCompleted(String taskId, String userId, int polls) {
+        taskPoller.schedule(() -> {
+            boolean completed;
+            try {
+                completed = esUtilService.isTaskCompleted(taskId);
+            } catch (Exception e) {
+                log.warn("AuthorProfileUpdateConsumer::evictWhenCompleted: failed to read task {}: {}", taskId, e.getMessage());
+                completed = false;
+            }
+            if (completed || polls + 1 >= taskMaxPolls) {
+                searchCacheIndex.evict(Collections.singleton(Constants.SEARCH_TAG_AUTHOR + userId));
+            } else {
+                evictWhenCompleted(taskId, userId, polls + 1);
+            }
+        }, taskPollInterval, TimeUnit.MILLISECONDS);
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/discussion")
@@ -32,6 +33,12 @@ public class DiscussionController {
         return new ResponseEntity<>(response,response.getResponseCode());
     }
 
+    @PostMapping("/read/batch")
+    public ResponseEntity<ApiResponse> readDiscussionBatch(@RequestBody JsonNode readRequest) {
+        ApiResponse response = discussionService.readDiscussionBatch(readRequest);
+        return new ResponseEntity<>(response, response.getResponseCode());
+    }
+
     @PostMapping("/update")
     public ResponseEntity<ApiResponse> updateDiscussion(@RequestBody JsonNode updateData,
                                                            @RequestHeader(Constants.X_AUTH_TOKEN) String token){
@@ -40,9 +47,15 @@ public class DiscussionController {
     }
 
     @PostMapping("/search")
-    public ResponseEntity<ApiResponse> searchDiscussion(@RequestBody SearchCriteria searchCriteria){
-        ApiResponse response = discussionService.searchDiscussion(searchCriteria);
-        return new ResponseEntity<>(response,response.getResponseCode());
+    public CompletableFuture<ResponseEntity<ApiResponse>> searchDiscussion(@RequestBody SearchCriteria searchCriteria){
+        return discussionService.searchDiscussionAsync(searchCriteria)
+                .thenApply(response -> new ResponseEntity<>(response, response.getResponseCode()));
+    }
+
+    @PostMapping("/search/batch")
+    public CompletableFuture<ResponseEntity<ApiResponse>> searchDiscussionBatch(@RequestBody Map<String, SearchCriteria> searches){
+        return discussionService.searchDiscussionBatchAsync(searches)
+                .thenApply(response -> new ResponseEntity<>(response, response.getResponseCode()));
     }
 
     @DeleteMapping("/delete/{discussionId}")
@@ -0,0 +1,162 @@
+package com.igot.cb.discussion.migration;
+
+import com.igot.cb.discussion.entity.DiscussionEntity;
+import com.igot.cb.discussion.repository.DiscussionRepository;
+import com.igot.cb.pores.elasticsearch.service.EsUtilService;
+import com.igot.cb.pores.util.CbServerProperties;
+import com.igot.cb.pores.util.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.params.SetParams;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Serves the discussion index through an alias, and moves the alias to a new index
+ * version once that index holds every document.
+ * <p>
+ * On startup the current index version is created with its analyzers and mappings,
+ * and the alias is created if missing, pointing at the previous index while there is
+ * one. Reads and writes always go through the alias, so they keep using the complete
+ * previous index while one node, holding a Redis lock, copies it into the new index in
+ * the background. Once the copy completed the alias is switched atomically, and the
+ * discussions written during the copy are indexed again from the database.
+ * <p>
+ * Startup fails if the index or the alias cannot be set up, as writes to a missing
+ * alias would create a wrongly mapped index. A failed copy leaves the alias on the
+ * previous index and is retried on the next start.
+ */
+@Component
+@Slf4j
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class DiscussionIndexMigration implements ApplicationRunner {
+
+    private static final String LOCK_KEY = "discussion_index_migration_lock";
+
+    @Autowired
+    private EsUtilService esUtilService;
+    @Autowired
+    private CbServerProperties cbServerProperties;
+    @Autowired
+    private DiscussionRepository discussionRepository;
+    @Autowired
+    private JedisPool jedisPool;
+
+    @Value("${discussion.entity.migration.pollInterval}")
+    private long pollInterval;
+
+    @Value("${discussion.entity.migration.lockTtl}")
+    private int lockTtl;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        String alias = cbServerProperties.getDiscussionEntity();
+        String index = cbServerProperties.getDiscussionEntityIndex();
+        String previousIndex = cbServerProperties.getPreviousDiscussionEntity();
+        if (esUtilService.createIndex(index, cbServerProperties.getDiscussionEntitySettingsJsonPath())) {
+            log.info("DiscussionIndexMigration::run: created index {}", index);
+        }
+        Set<String> aliasedIndices = esUtilService.getAliasIndices(alias);
+        if (aliasedIndices.contains(index)) {
+            return;
+        }
+        boolean hasPrevious = StringUtils.isNotBlank(previousIndex) && !previousIndex.equals(index)
+                && esUtilService.isIndexPresent(previousIndex);
+        if (!hasPrevious) {
+            esUtilService.switchAlias(alias, aliasedIndices.isEmpty() ? null : aliasedIndices.iterator().next(), index);
+            log.info("DiscussionIndexMigration::run: alias {} points to {}", alias, index);
+            return;
+        }
+        if (aliasedIndices.isEmpty()) {
+            esUtilService.switchAlias(alias, null, previousIndex);
+            log.info("DiscussionIndexMigration::run: alias {} points to {} until {} is filled", alias, previousIndex, index);
+        } else if (!aliasedIndices.contains(previousIndex)) {
+            throw new IllegalStateException("Alias " + alias + " points to " + aliasedIndices
+                    + ", expected " + previousIndex + " or " + index);
+        }
+        String lockToken = UUID.randomUUID().toString();
+        if (!acquireLock(lockToken)) {
+            log.info("DiscussionIndexMigration::run: another node is filling {}", index);
+            return;
+        }
+        Thread migration = new Thread(() -> migrate(alias, previousIndex, index, lockToken), "discussion-index-migration");
+        migration.setDaemon(true);
+        migration.start();
+    }
+
+    private void migrate(String alias, String previousIndex, String index, String lockToken) {
+        try {
+            Timestamp start = new Timestamp(System.currentTimeMillis());
+            long previousCount = esUtilService.countAllDocuments(previousIndex);
+            String taskId = esUtilService.reindex(previousIndex, index);
+            log.info("DiscussionIndexMigration::migrate: copying {} documents of {} into {}, task {}",
+                    previousCount, previousIndex, index, taskId);
+            while (!esUtilService.isTaskCompleted(taskId)) {
+                Thread.sleep(pollInterval);
+            }
+            long count = esUtilService.countAllDocuments(index);
+            if (count < previousCount) {
+                log.error("DiscussionIndexMigration::migrate: {} holds {} of {} documents, alias {} stays on {}",
+                        index, count, previousCount, alias, previousIndex);
+                return;
+            }
+            esUtilService.switchAlias(alias, previousIndex, index);
+            log.info("DiscussionIndexMigration::migrate: alias {} switched from {} to {}", alias, previousIndex, index);
+            reindexWrittenSince(start, index);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("DiscussionIndexMigration::migrate: failed to migrate {} into {}: {}", previousIndex, index, e.getMessage(), e);
+        } finally {
+            releaseLock(lockToken);
+        }
+    }
+
+    /**
+     * Indexes the discussions created or updated since the copy started, which the copy
+     * may have missed, from the database.
+     */
+    private void reindexWrittenSince(Timestamp start, String index) {
+        List<DiscussionEntity> written = discussionRepository
+                .findByCreatedOnGreaterThanEqualOrUpdatedOnGreaterThanEqual(start, start);
+        List<CompletableFuture<RestStatus>> indexed = new ArrayList<>();
+        for (DiscussionEntity discussionEntity : written) {
+            indexed.add(esUtilService.addDocument(index, Constants.INDEX_TYPE, discussionEntity.getDiscussionId(),
+                    discussionEntity.getData(), cbServerProperties.getElasticDiscussionJsonPath()));
+        }
+        CompletableFuture.allOf(indexed.toArray(new CompletableFuture[0])).join();
+        log.info("DiscussionIndexMigration::reindexWrittenSince: indexed {} discussions written during the copy", written.size());
+    }
+
+    private boolean acquireLock(String lockToken) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return "OK".equals(jedis.set(LOCK_KEY, lockToken, SetParams.setParams().nx().ex(lockTtl)));
+        }
+    }
+
+    private void releaseLock(String lockToken) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            if (lockToken.equals(jedis.get(LOCK_KEY))) {
+                jedis.del(LOCK_KEY);
+            }
+        } catch (Exception e) {
+            log.warn("DiscussionIndexMigration::releaseLock: failed to release the migration lock: {}", e.getMessage());
+        }
+    }
+}
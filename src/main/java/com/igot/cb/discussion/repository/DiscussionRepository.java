@@ -2,8 +2,23 @@ package com.igot.cb.discussion.repository;
 
 import com.igot.cb.discussion.entity.DiscussionEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface DiscussionRepository extends JpaRepository<DiscussionEntity, String>{
+
+    /**
+     * Reads the discussion and locks its row until the surrounding transaction ends, for
+     * updates that are computed from the current data.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<DiscussionEntity> findWithLockByDiscussionId(String discussionId);
+
+    List<DiscussionEntity> findByCreatedOnGreaterThanEqualOrUpdatedOnGreaterThanEqual(Timestamp createdOn, Timestamp updatedOn);
 }
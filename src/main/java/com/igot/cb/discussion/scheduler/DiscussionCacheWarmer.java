@@ -0,0 +1,45 @@
+package com.igot.cb.discussion.scheduler;
+
+import com.igot.cb.discussion.service.DiscussionService;
+import com.igot.cb.pores.util.CbServerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills the discussion cache with the hottest discussions so that the first reads
+ * after a deploy or a Redis failover do not all go to the database. The startup run
+ * happens before the application reports itself ready to accept traffic; the cache
+ * is then topped up on a schedule.
+ */
+@Component
+@Slf4j
+public class DiscussionCacheWarmer implements ApplicationRunner {
+
+    @Autowired
+    private DiscussionService discussionService;
+    @Autowired
+    private CbServerProperties cbServerProperties;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        warmUp();
+    }
+
+    @Scheduled(initialDelayString = "${discussion.cache.warmup.interval}", fixedDelayString = "${discussion.cache.warmup.interval}")
+    public void warmUp() {
+        if (!cbServerProperties.isDiscussionCacheWarmUpEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            int cached = discussionService.warmUpDiscussionCache(cbServerProperties.getDiscussionCacheWarmUpSize());
+            log.info("DiscussionCacheWarmer::warmUp: cached {} discussions in {} ms", cached, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("DiscussionCacheWarmer::warmUp: failed to warm up the discussion cache: {}", e.getMessage(), e);
+        }
+    }
+}
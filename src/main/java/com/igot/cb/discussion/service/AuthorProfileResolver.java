@@ -0,0 +1,332 @@
+package com.igot.cb.discussion.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.igot.cb.pores.cache.CacheService;
+import com.igot.cb.pores.util.Constants;
+import com.igot.cb.transactional.cassandrautils.CassandraOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.MapUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.params.SetParams;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the profiles shown as the authors of discussions. Profiles are read from a
+ * small in-process cache first, then with one Redis lookup for all remaining users, and
+ * the users missing in Redis with one Cassandra query. Parsed profiles are kept in the
+ * in-process cache for a short time, as the same authors appear on many pages.
+ * Profiles read from Cassandra are written back to Redis, and users Cassandra does not
+ * know are recorded as short lived negative entries, so that neither is queried again
+ * on the next page.
+ */
+@Component
+@Slf4j
+public class AuthorProfileResolver {
+
+    private static final List<String> PROFILE_COLUMNS =
+            Arrays.asList(Constants.PROFILE_DETAILS, Constants.FIRST_NAME, Constants.ID);
+
+    private static final String NEGATIVE_CACHE_MARKER = "1";
+
+    /** Held by the in-process cache for users known not to exist. */
+    private static final Map<String, Object> ABSENT = Collections.emptyMap();
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemp;
+    @Autowired
+    private JedisPool jedisPool;
+    @Autowired
+    private CassandraOperation cassandraOperation;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private CacheService cacheService;
+
+    @Value("${author.profile.cache.maxSize}")
+    private long cacheMaxSize;
+
+    @Value("${author.profile.cache.ttl}")
+    private long cacheTtl;
+
+    @Value("${author.profile.redis.ttl}")
+    private int redisTtl;
+
+    @Value("${author.profile.redis.negativeTtl}")
+    private int redisNegativeTtl;
+
+    @Value("${author.profile.backfill.queueCapacity}")
+    private int backfillQueueCapacity;
+
+    private Cache<String, Map<String, Object>> profiles;
+
+    /** Writes profiles read from Cassandra back to Redis, off the request and driver threads. */
+    private ThreadPoolExecutor backfillExecutor;
+
+    @PostConstruct
+    public void init() {
+        profiles = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl, TimeUnit.SECONDS)
+                .build();
+        backfillExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(backfillQueueCapacity));
+        backfillExecutor.allowCoreThreadTimeOut(true);
+        cacheService.addInvalidationListener(key -> {
+            if (key.startsWith(Constants.USER_PREFIX)) {
+                profiles.invalidate(key.substring(Constants.USER_PREFIX.length()));
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfillExecutor.shutdown();
+    }
+
+    /**
+     * @param userIds the ids of the users
+     * @return the profiles of the users found, by user id
+     */
+    public Map<String, Map<String, Object>> resolve(Collection<String> userIds) {
+        Map<String, Map<String, Object>> resolved = new HashMap<>();
+        List<String> missingUserIds = resolveCached(userIds, resolved);
+        if (!missingUserIds.isEmpty()) {
+            Map<String, Object> propertyMap = new HashMap<>();
+            propertyMap.put(Constants.ID, missingUserIds);
+            addAll(resolved, missingUserIds, toProfiles(cassandraOperation.getRecordsByPropertiesWithoutFiltering(
+                    Constants.KEYSPACE_SUNBIRD, Constants.USER_TABLE, propertyMap, PROFILE_COLUMNS, null)));
+        }
+        return resolved;
+    }
+
+    /**
+     * Same as {@link #resolve} without waiting for Cassandra. The in-process cache and
+     * Redis are still read on the calling thread, so it must not be an I/O thread.
+     */
+    public CompletableFuture<Map<String, Map<String, Object>>> resolveAsync(Collection<String> userIds) {
+        Map<String, Map<String, Object>> resolved = new HashMap<>();
+        List<String> missingUserIds = resolveCached(userIds, resolved);
+        if (missingUserIds.isEmpty()) {
+            return CompletableFuture.completedFuture(resolved);
+        }
+        Map<String, Object> propertyMap = new HashMap<>();
+        propertyMap.put(Constants.ID, missingUserIds);
+        return cassandraOperation.getRecordsByPropertiesWithoutFilteringAsync(
+                        Constants.KEYSPACE_SUNBIRD, Constants.USER_TABLE, propertyMap, PROFILE_COLUMNS, null)
+                .thenApply(userInfoList -> {
+                    addAll(resolved, missingUserIds, toProfiles(userInfoList));
+                    return resolved;
+                });
+    }
+
+    /**
+     * Reads the current profile of a user from Cassandra, bypassing Redis, which may not
+     * have caught up with a profile change yet, and replaces the in-process copy. The
+     * Redis profile and negative entry are replaced by what Cassandra returned, and the
+     * other nodes are told to drop their in-process copies.
+     *
+     * @return the profile, or null if the user does not exist
+     */
+    public Map<String, Object> refresh(String userId) {
+        profiles.invalidate(userId);
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.del(Constants.USER_PREFIX + userId);
+            pipeline.del(negativeKey(userId));
+            pipeline.sync();
+        }
+        cacheService.announceInvalidation(Constants.USER_PREFIX + userId);
+        Map<String, Object> propertyMap = new HashMap<>();
+        propertyMap.put(Constants.ID, userId);
+        Map<String, Map<String, Object>> resolved = new HashMap<>();
+        addAll(resolved, Collections.singletonList(userId), toProfiles(cassandraOperation.getRecordsByPropertiesWithoutFiltering(
+                Constants.KEYSPACE_SUNBIRD, Constants.USER_TABLE, propertyMap, PROFILE_COLUMNS, null)));
+        return resolved.get(userId);
+    }
+
+    /**
+     * Adds the profiles found in the in-process cache or in Redis to resolved. The
+     * profiles and the negative entries of the users are read with a single MGET.
+     *
+     * @return the ids of the users found in neither and not known to be absent
+     */
+    private List<String> resolveCached(Collection<String> userIds, Map<String, Map<String, Object>> resolved) {
+        List<String> uncachedUserIds = new ArrayList<>();
+        for (String userId : new LinkedHashSet<>(userIds)) {
+            Map<String, Object> profile = profiles.getIfPresent(userId);
+            if (profile == ABSENT) {
+                continue;
+            }
+            if (profile != null) {
+                resolved.put(userId, profile);
+            } else {
+                uncachedUserIds.add(userId);
+            }
+        }
+        if (uncachedUserIds.isEmpty()) {
+            return uncachedUserIds;
+        }
+        int count = uncachedUserIds.size();
+        List<String> keys = new ArrayList<>(count * 2);
+        for (String userId : uncachedUserIds) {
+            keys.add(Constants.USER_PREFIX + userId);
+        }
+        for (String userId : uncachedUserIds) {
+            keys.add(negativeKey(userId));
+        }
+        List<Object> values = redisTemp.opsForValue().multiGet(keys);
+        List<String> missingUserIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String userId = uncachedUserIds.get(i);
+            Map<String, Object> profile = values != null ? parse(keys.get(i), values.get(i)) : null;
+            if (profile != null) {
+                resolved.put(userId, cache(userId, profile));
+            } else if (values != null && values.get(count + i) != null) {
+                profiles.put(userId, ABSENT);
+            } else {
+                missingUserIds.add(userId);
+            }
+        }
+        return missingUserIds;
+    }
+
+    private Map<String, Object> parse(String key, Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue((String) value, new TypeReference<Map<String, Object>>() {
+            });
+        } catch (IOException | ClassCastException e) {
+            log.warn("AuthorProfileResolver::parse: ignoring unreadable profile {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Adds the profiles read from Cassandra to resolved and queues writing them, and the
+     * users Cassandra did not return, back to Redis.
+     */
+    private void addAll(Map<String, Map<String, Object>> resolved, List<String> requestedUserIds,
+                        List<Map<String, Object>> found) {
+        Map<String, Map<String, Object>> backfill = new HashMap<>();
+        for (Map<String, Object> profile : found) {
+            String userId = (String) profile.get(Constants.USER_ID_KEY);
+            resolved.put(userId, cache(userId, profile));
+            backfill.put(userId, profile);
+        }
+        List<String> absentUserIds = new ArrayList<>();
+        for (String userId : requestedUserIds) {
+            if (!backfill.containsKey(userId)) {
+                profiles.put(userId, ABSENT);
+                absentUserIds.add(userId);
+            }
+        }
+        try {
+            backfillExecutor.execute(() -> backfill(backfill, absentUserIds));
+        } catch (RejectedExecutionException e) {
+            log.warn("AuthorProfileResolver::addAll: back-fill queue full, not caching {} profiles", requestedUserIds.size());
+        }
+    }
+
+    /**
+     * Writes the profiles and the negative entries in one pipelined round trip. A profile
+     * is only written if the key is still missing, so it never replaces a complete
+     * profile written in the meantime by the service owning the users.
+     */
+    private void backfill(Map<String, Map<String, Object>> found, List<String> absentUserIds) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<String, Map<String, Object>> profile : found.entrySet()) {
+                pipeline.set(Constants.USER_PREFIX + profile.getKey(), objectMapper.writeValueAsString(profile.getValue()),
+                        SetParams.setParams().nx().ex(redisTtl));
+            }
+            for (String userId : absentUserIds) {
+                pipeline.setex(negativeKey(userId), redisNegativeTtl, NEGATIVE_CACHE_MARKER);
+            }
+            pipeline.sync();
+        } catch (Exception e) {
+            log.error("AuthorProfileResolver::backfill: failed to write {} profiles to Redis: {}",
+                    found.size() + absentUserIds.size(), e.getMessage());
+        }
+    }
+
+    private static String negativeKey(String userId) {
+        return Constants.NEGATIVE_CACHE_PREFIX + Constants.USER_PREFIX + userId;
+    }
+
+    private Map<String, Object> cache(String userId, Map<String, Object> profile) {
+        Map<String, Object> cached = Collections.unmodifiableMap(profile);
+        profiles.put(userId, cached);
+        return cached;
+    }
+
+    private List<Map<String, Object>> toProfiles(List<Map<String, Object>> userInfoList) {
+        List<Map<String, Object>> found = new ArrayList<>(userInfoList.size());
+        for (Map<String, Object> userInfo : userInfoList) {
+            found.add(toProfile(userInfo));
+        }
+        return found;
+    }
+
+    private Map<String, Object> toProfile(Map<String, Object> userInfo) {
+        Map<String, Object> userMap = new HashMap<>();
+        userMap.put(Constants.USER_ID_KEY, userInfo.get(Constants.ID));
+        userMap.put(Constants.FIRST_NAME_KEY, userInfo.get(Constants.FIRST_NAME));
+        String profileDetails = (String) userInfo.get(Constants.PROFILE_DETAILS);
+        if (StringUtils.isBlank(profileDetails)) {
+            return userMap;
+        }
+        try {
+            Map<String, Object> profileDetailsMap = objectMapper.readValue(profileDetails,
+                    new TypeReference<HashMap<String, Object>>() {
+                    });
+            if (MapUtils.isEmpty(profileDetailsMap)) {
+                return userMap;
+            }
+            if (profileDetailsMap.get(Constants.PROFILE_IMG) instanceof String
+                    && StringUtils.isNotBlank((String) profileDetailsMap.get(Constants.PROFILE_IMG))) {
+                userMap.put(Constants.PROFILE_IMG_KEY, profileDetailsMap.get(Constants.PROFILE_IMG));
+            }
+            if (profileDetailsMap.get(Constants.DESIGNATION_KEY) instanceof String
+                    && StringUtils.isNotEmpty((String) profileDetailsMap.get(Constants.DESIGNATION_KEY))) {
+                userMap.put(Constants.DESIGNATION_KEY, profileDetailsMap.get(Constants.DESIGNATION_KEY));
+            }
+            Object employmentDetails = profileDetailsMap.get(Constants.EMPLOYMENT_DETAILS);
+            if (employmentDetails instanceof Map
+                    && ((Map<?, ?>) employmentDetails).get(Constants.DEPARTMENT_KEY) instanceof String
+                    && StringUtils.isNotBlank((String) ((Map<?, ?>) employmentDetails).get(Constants.DEPARTMENT_KEY))) {
+                userMap.put(Constants.DEPARTMENT, ((Map<?, ?>) employmentDetails).get(Constants.DEPARTMENT_KEY));
+            }
+        } catch (IOException e) {
+            log.error("Error occurred while converting json object to json string", e);
+        }
+        return userMap;
+    }
+}
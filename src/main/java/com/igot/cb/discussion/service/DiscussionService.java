@@ -8,16 +8,23 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 @Service
 public interface DiscussionService {
     ApiResponse createDiscussion(JsonNode discussionDetails, String token);
 
     ApiResponse readDiscussion(String discussionId);
 
+    ApiResponse readDiscussionBatch(JsonNode readRequest);
+
     ApiResponse updateDiscussion(JsonNode updateData,String token);
 
     ApiResponse searchDiscussion(SearchCriteria searchCriteria);
 
+    CompletableFuture<ApiResponse> searchDiscussionAsync(SearchCriteria searchCriteria);
+
+    CompletableFuture<ApiResponse> searchDiscussionBatchAsync(Map<String, SearchCriteria> searches);
+
     ApiResponse deleteDiscussion(String discussionId,String token);
 
     ApiResponse createAnswerPost(JsonNode answerPostData, String token);
@@ -29,4 +36,6 @@ public interface DiscussionService {
     ApiResponse report(String token, Map<String, Object> reportData);
 
     ApiResponse uploadFile(MultipartFile file);
+
+    int warmUpDiscussionCache(int size);
 }
@@ -1,32 +1,45 @@
 package com.igot.cb.discussion.service.impl;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.algorithms.Algorithm;
 import com.datastax.driver.core.utils.UUIDs;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.igot.cb.authentication.util.AccessTokenValidator;
 import com.igot.cb.discussion.entity.DiscussionEntity;
 import com.igot.cb.discussion.repository.DiscussionRepository;
+import com.igot.cb.discussion.service.AuthorProfileResolver;
 import com.igot.cb.discussion.service.DiscussionService;
 import com.igot.cb.pores.cache.CacheService;
+import com.igot.cb.pores.cache.SearchCacheIndex;
+import com.igot.cb.pores.cache.SearchCacheKeyGenerator;
+import com.igot.cb.pores.cache.SingleFlight;
+import com.igot.cb.pores.cache.VersionedValue;
+import com.igot.cb.pores.elasticsearch.dto.FacetDTO;
 import com.igot.cb.pores.elasticsearch.dto.SearchCriteria;
 import com.igot.cb.pores.elasticsearch.dto.SearchResult;
 import com.igot.cb.pores.elasticsearch.service.EsUtilService;
+import com.igot.cb.pores.elasticsearch.service.ProjectionProfiles;
+import com.igot.cb.pores.exceptions.CustomException;
 import com.igot.cb.pores.util.*;
 import com.igot.cb.transactional.cassandrautils.CassandraOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import org.sunbird.cloud.storage.BaseStorageService;
 import org.sunbird.cloud.storage.factory.StorageConfig;
@@ -35,17 +48,30 @@ import scala.Option;
 import java.time.LocalDate;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.time.format.DateTimeFormatter;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class DiscussionServiceImpl implements DiscussionService {
+    /**
+     * Filter fields cached search pages are tagged with, most selective first.
+     */
+    private static final List<String> SEARCH_CACHE_DIMENSIONS = Arrays.asList(
+            Constants.PARENT_DISCUSSION_ID, Constants.TARGET_TOPIC, Constants.TYPE, Constants.STATUS);
+
     private BaseStorageService storageService = null;
 
     @Autowired
@@ -67,13 +93,50 @@ public class DiscussionServiceImpl implements DiscussionService {
     @Autowired
     private AccessTokenValidator accessTokenValidator;
     @Autowired
-    private RedisTemplate<String, Object> redisTemp;
+    private SingleFlight singleFlight;
+    @Autowired
+    private SearchCacheKeyGenerator searchCacheKeyGenerator;
+    @Autowired
+    private SearchCacheIndex searchCacheIndex;
+    @Autowired
+    private ProjectionProfiles projectionProfiles;
+    @Autowired
+    private AuthorProfileResolver authorProfileResolver;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Runs the blocking Redis calls of asynchronous searches.
+     */
+    private ThreadPoolExecutor searchExecutor;
+
+    /**
+     * Evicts the search pages affected by a write once it is indexed. When saturated the
+     * completing thread evicts itself, which slows indexing down rather than skipping
+     * an eviction.
+     */
+    private ThreadPoolExecutor evictionExecutor;
 
     @PostConstruct
     public void init() {
         if (storageService == null) {
             storageService = StorageServiceFactory.getStorageService(new StorageConfig(cbServerProperties.getCloudStorageTypeName(), cbServerProperties.getCloudStorageKey(), cbServerProperties.getCloudStorageSecret().replace("\\n", "\n"), Option.apply(cbServerProperties.getCloudStorageEndpoint()), Option.empty()));
         }
+        searchExecutor = new ThreadPoolExecutor(cbServerProperties.getDiscussionSearchAsyncThreads(),
+                cbServerProperties.getDiscussionSearchAsyncThreads(), 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(cbServerProperties.getDiscussionSearchAsyncQueueCapacity()));
+        searchExecutor.allowCoreThreadTimeOut(true);
+        evictionExecutor = new ThreadPoolExecutor(cbServerProperties.getDiscussionSearchEvictionThreads(),
+                cbServerProperties.getDiscussionSearchEvictionThreads(), 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(cbServerProperties.getDiscussionSearchEvictionQueueCapacity()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        evictionExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        searchExecutor.shutdown();
+        evictionExecutor.shutdown();
     }
 
     /**
@@ -115,8 +178,10 @@ public class DiscussionServiceImpl implements DiscussionService {
             ObjectNode jsonNode = objectMapper.createObjectNode();
             jsonNode.setAll((ObjectNode) saveJsonEntity.getData());
             Map<String, Object> map = objectMapper.convertValue(jsonNode, Map.class);
-            esUtilService.addDocument(cbServerProperties.getDiscussionEntity(), Constants.INDEX_TYPE, String.valueOf(id), map, cbServerProperties.getElasticDiscussionJsonPath());
-            cacheService.putCache("discussion_" + String.valueOf(id), jsonNode);
+            CompletableFuture<RestStatus> indexed = indexDiscussion(String.valueOf(id), jsonNode);
+            cacheService.putCache("discussion_" + String.valueOf(id), jsonNode, currentTime.getTime());
+            clearNegativeCache(String.valueOf(id));
+            evictSearchPages(indexed, jsonNode);
             map.put(Constants.CREATED_ON,currentTime);
             response.setResponseCode(HttpStatus.CREATED);
             response.getParams().setStatus(Constants.SUCCESS);
@@ -145,25 +210,27 @@ public class DiscussionServiceImpl implements DiscussionService {
             return response;
         }
         try {
-            String cachedJson = cacheService.getCache(Constants.DISCUSSION_CACHE_PREFIX + discussionId);
+            String cachedJson = cacheService.getCache(Constants.DISCUSSION_CACHE_PREFIX + discussionId,
+                    () -> discussionRepository.findById(discussionId).map(entity -> new VersionedValue(readView(entity), cacheVersion(entity))).orElse(null));
             if (StringUtils.isNotEmpty(cachedJson)) {
                 log.info("discussion Record coming from redis cache");
                 response.setMessage(Constants.SUCCESS);
                 response.setResponseCode(HttpStatus.OK);
-                response.setResult((Map<String, Object>) objectMapper.readValue(cachedJson, new TypeReference<Object>() {
-                }));
+                if (cbServerProperties.isDiscussionReadCachePassthrough()) {
+                    response.setRawResult(cachedJson);
+                } else {
+                    response.setResult((Map<String, Object>) objectMapper.readValue(cachedJson, new TypeReference<Object>() {
+                    }));
+                }
             } else {
-                Optional<DiscussionEntity> entityOptional = discussionRepository.findById(discussionId);
+                Optional<DiscussionEntity> entityOptional = loadDiscussion(discussionId);
                 if (entityOptional.isPresent()) {
                     DiscussionEntity discussionEntity = entityOptional.get();
-                    cacheService.putCache(Constants.DISCUSSION_CACHE_PREFIX + discussionId, discussionEntity.getData());
                     log.info("discussion Record coming from postgres db");
                     response.setMessage(Constants.SUCCESS);
                     response.setResponseCode(HttpStatus.OK);
-                    response.setResult((Map<String, Object>) objectMapper.convertValue(discussionEntity.getData(), new TypeReference<Object>() {
+                    response.setResult((Map<String, Object>) objectMapper.convertValue(readView(discussionEntity), new TypeReference<Object>() {
                     }));
-                    response.getResult().put(Constants.IS_ACTIVE, discussionEntity.getIsActive());
-                    response.getResult().put(Constants.CREATED_ON, discussionEntity.getCreatedOn());
                 } else {
                     log.error("Invalid discussionId: {}", discussionId);
                     createErrorResponse(response,Constants.INVALID_ID,HttpStatus.NOT_FOUND,Constants.FAILED);
@@ -178,6 +245,86 @@ public class DiscussionServiceImpl implements DiscussionService {
         return response;
     }
 
+    /**
+     * Returns the discussions with the given ids in the order they were requested.
+     * Cache hits are resolved with one multi-key lookup, all misses are loaded with a
+     * single database query and written back to the cache in one pipelined call.
+     *
+     * @param readRequest The request holding the list of discussion ids
+     * @return A CustomResponse containing the discussions found and the ids that do not exist
+     */
+    @Override
+    public ApiResponse readDiscussionBatch(JsonNode readRequest) {
+        log.info("DiscussionServiceImpl::readDiscussionBatch");
+        ApiResponse response = ProjectUtil.createDefaultResponse("discussion.read.batch");
+        JsonNode idsNode = readRequest == null ? null : readRequest.get(Constants.DISCUSSION_IDS);
+        if (idsNode == null || !idsNode.isArray() || idsNode.size() == 0) {
+            createErrorResponse(response, Constants.DISCUSSION_IDS_MISSING, HttpStatus.BAD_REQUEST, Constants.FAILED);
+            return response;
+        }
+        Set<String> discussionIds = new LinkedHashSet<>();
+        idsNode.forEach(id -> {
+            if (StringUtils.isNotBlank(id.asText())) {
+                discussionIds.add(id.asText());
+            }
+        });
+        if (discussionIds.isEmpty()) {
+            createErrorResponse(response, Constants.DISCUSSION_IDS_MISSING, HttpStatus.BAD_REQUEST, Constants.FAILED);
+            return response;
+        }
+        if (discussionIds.size() > cbServerProperties.getDiscussionReadBatchMaxSize()) {
+            createErrorResponse(response, String.format(Constants.DISCUSSION_BATCH_LIMIT_EXCEEDED, cbServerProperties.getDiscussionReadBatchMaxSize()), HttpStatus.BAD_REQUEST, Constants.FAILED);
+            return response;
+        }
+        try {
+            Map<String, String> cachedDiscussions = cacheService.getAll(discussionIds.stream()
+                    .map(id -> Constants.DISCUSSION_CACHE_PREFIX + id).collect(Collectors.toList()));
+            Map<String, Object> discussionsById = new HashMap<>();
+            List<String> missingIds = new ArrayList<>();
+            for (String discussionId : discussionIds) {
+                String cachedJson = cachedDiscussions.get(Constants.DISCUSSION_CACHE_PREFIX + discussionId);
+                if (StringUtils.isEmpty(cachedJson)) {
+                    missingIds.add(discussionId);
+                } else if (cbServerProperties.isDiscussionReadCachePassthrough()) {
+                    discussionsById.put(discussionId, new RawValue(cachedJson));
+                } else {
+                    discussionsById.put(discussionId, objectMapper.readValue(cachedJson, new TypeReference<Map<String, Object>>() {
+                    }));
+                }
+            }
+            if (!missingIds.isEmpty()) {
+                Map<String, VersionedValue> cacheEntries = new HashMap<>();
+                for (DiscussionEntity discussionEntity : discussionRepository.findAllById(missingIds)) {
+                    JsonNode discussion = readView(discussionEntity);
+                    cacheEntries.put(Constants.DISCUSSION_CACHE_PREFIX + discussionEntity.getDiscussionId(),
+                            new VersionedValue(discussion, cacheVersion(discussionEntity)));
+                    discussionsById.put(discussionEntity.getDiscussionId(), objectMapper.convertValue(discussion, new TypeReference<Map<String, Object>>() {
+                    }));
+                }
+                cacheService.putAll(cacheEntries);
+            }
+            List<Object> discussions = new ArrayList<>();
+            List<String> invalidIds = new ArrayList<>();
+            for (String discussionId : discussionIds) {
+                Object discussion = discussionsById.get(discussionId);
+                if (discussion != null) {
+                    discussions.add(discussion);
+                } else {
+                    invalidIds.add(discussionId);
+                }
+            }
+            response.getResult().put(Constants.DISCUSSIONS, discussions);
+            response.getResult().put(Constants.INVALID_IDS, invalidIds);
+            response.setMessage(Constants.SUCCESS);
+            response.setResponseCode(HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("Failed to read discussions {}: {}", discussionIds, e.getMessage(), e);
+            createErrorResponse(response, "Failed to read the discussions", HttpStatus.INTERNAL_SERVER_ERROR, Constants.FAILED);
+            return response;
+        }
+        return response;
+    }
+
 
     /**
      * Updates the discussion with the given id based on the provided update data.
@@ -202,6 +349,7 @@ public class DiscussionServiceImpl implements DiscussionService {
                 return response;
             }
             JsonNode data = discussionDbData.getData();
+            JsonNode previousData = data.deepCopy();
             List<String> updateFields = Arrays.asList(Constants.TYPE, Constants.TITLE, Constants.DESCRIPTION_PAYLOAD, Constants.TARGET_TOPIC, Constants.TAGS);
             for (String field : updateFields) {
                 if (updateData.has(field)) {
@@ -217,8 +365,9 @@ public class DiscussionServiceImpl implements DiscussionService {
             jsonNode.set(Constants.DISCUSSION_ID, new TextNode(discussionDbData.getDiscussionId()));
             jsonNode.setAll((ObjectNode) data);
 
-            Map<String, Object> map = objectMapper.convertValue(jsonNode, Map.class);
-            esUtilService.addDocument(cbServerProperties.getDiscussionEntity(), Constants.INDEX_TYPE, discussionDbData.getDiscussionId(), map, cbServerProperties.getElasticDiscussionJsonPath());
+            CompletableFuture<RestStatus> indexed = indexDiscussion(discussionDbData.getDiscussionId(), jsonNode);
+            cacheService.putCache(Constants.DISCUSSION_CACHE_PREFIX + discussionDbData.getDiscussionId(), jsonNode, currentTime.getTime());
+            evictSearchPages(indexed, previousData, jsonNode);
             Map<String, Object> responseMap = objectMapper.convertValue(discussionDbData, new TypeReference<Map<String, Object>>() {
             });
             response.setResponseCode(HttpStatus.OK);
@@ -233,79 +382,454 @@ public class DiscussionServiceImpl implements DiscussionService {
     }
 
 
+    /**
+     * Searches discussions on the calling thread, by waiting for
+     * {@link #searchDiscussionAsync}.
+     */
     @Override
     public ApiResponse searchDiscussion(SearchCriteria searchCriteria) {
-        log.info("DiscussionServiceImpl::searchDiscussion");
+        return searchDiscussionAsync(searchCriteria).join();
+    }
+
+    /**
+     * Searches discussions without holding the calling thread while I/O is pending.
+     * Cursor pages are never cached, as they hold a point in time that expires long
+     * before a cached page would. Elasticsearch and Cassandra are queried through their
+     * asynchronous clients. The Redis client only offers blocking calls, so the cache
+     * lookup, the user lookup and the write-back run on the bounded search executor;
+     * when it is saturated the search fails fast instead of queueing without limit.
+     */
+    @Override
+    public CompletableFuture<ApiResponse> searchDiscussionAsync(SearchCriteria searchCriteria) {
+        log.info("DiscussionServiceImpl::searchDiscussionAsync");
         ApiResponse response = ProjectUtil.createDefaultResponse("search.discussion");
-        SearchResult searchResult =  redisTemplate.opsForValue().get(generateRedisJwtTokenKey(searchCriteria));
-        if (searchResult != null) {
-            log.info("DiscussionServiceImpl::searchDiscussion:  search result fetched from redis");
-            response.getResult().put(Constants.SEARCH_RESULTS, searchResult);
-            createSuccessResponse(response);
-            return response;
+        if (searchCriteria.getSearchString() != null) {
+            searchCriteria.setSearchString(searchCriteria.getSearchString().trim());
         }
         String searchString = searchCriteria.getSearchString();
         if (searchString != null && searchString.length() < 2) {
             createErrorResponse(response, Constants.MINIMUM_CHARACTERS_NEEDED, HttpStatus.BAD_REQUEST, Constants.FAILED_CONST);
+            return CompletableFuture.completedFuture(response);
+        }
+        boolean cursorSearch = isCursorSearch(searchCriteria);
+        String searchCacheKey = cursorSearch ? null : searchCacheKeyGenerator.generate(searchCriteria);
+        String facetCacheKey = facetCacheKey(searchCriteria);
+        CompletableFuture<SearchResult> searched;
+        try {
+            searched = CompletableFuture.supplyAsync(() -> {
+                SearchResult cached = cursorSearch ? null : getCachedSearchResult(searchCacheKey);
+                if (cached != null) {
+                    log.info("DiscussionServiceImpl::searchDiscussionAsync:  search result fetched from redis");
+                    return CompletableFuture.completedFuture(cached);
+                }
+                long epoch = searchCacheIndex.currentEpoch();
+                Map<String, List<FacetDTO>> cachedFacets = facetCacheKey != null ? getCachedFacets(facetCacheKey) : null;
+                return esUtilService.searchDocumentsAsync(cbServerProperties.getDiscussionEntity(), searchCriteria, cachedFacets == null)
+                        .thenComposeAsync(searchResult -> {
+                            if (cachedFacets != null) {
+                                searchResult.setFacets(cachedFacets);
+                            } else if (facetCacheKey != null) {
+                                writeBehind(() -> cacheFacets(facetCacheKey, searchCriteria, searchResult.getFacets(), epoch));
+                            }
+                            return resolveExactTotalCountAsync(searchResult, searchCriteria, epoch);
+                        }, searchExecutor)
+                        .thenComposeAsync(searchResult -> enrichSearchResultAsync(searchResult, searchCriteria, searchCacheKey, epoch),
+                                searchExecutor);
+            }, searchExecutor).thenCompose(Function.identity());
+        } catch (RejectedExecutionException e) {
+            createErrorResponse(response, Constants.SEARCH_CAPACITY_EXCEEDED, HttpStatus.SERVICE_UNAVAILABLE, Constants.FAILED_CONST);
+            return CompletableFuture.completedFuture(response);
+        }
+        return searched.handle((searchResult, e) -> {
+            if (e != null) {
+                return createSearchFailureResponse(response, e);
+            }
+            response.getResult().put(Constants.SEARCH_RESULTS, searchResult);
+            createSuccessResponse(response);
             return response;
+        });
+    }
+
+    /**
+     * Runs several named searches in one request. Searches whose page is cached are served
+     * from the cache, the others are sent to Elasticsearch as a single multi search, and
+     * the authors of all pages found are looked up together.
+     */
+    @Override
+    public CompletableFuture<ApiResponse> searchDiscussionBatchAsync(Map<String, SearchCriteria> searches) {
+        log.info("DiscussionServiceImpl::searchDiscussionBatchAsync");
+        ApiResponse response = ProjectUtil.createDefaultResponse("search.discussion.batch");
+        int maxBatchSize = cbServerProperties.getDiscussionSearchBatchMaxSize();
+        if (MapUtils.isEmpty(searches) || searches.size() > maxBatchSize) {
+            createErrorResponse(response, String.format(Constants.INVALID_SEARCH_BATCH_SIZE, maxBatchSize), HttpStatus.BAD_REQUEST, Constants.FAILED_CONST);
+            return CompletableFuture.completedFuture(response);
+        }
+        Map<String, String> searchCacheKeys = new LinkedHashMap<>();
+        Map<String, String> facetCacheKeys = new HashMap<>();
+        for (Map.Entry<String, SearchCriteria> search : searches.entrySet()) {
+            SearchCriteria searchCriteria = search.getValue();
+            String error = null;
+            if (searchCriteria == null) {
+                error = Constants.SEARCH_CRITERIA_MISSING;
+            } else if (isCursorSearch(searchCriteria)) {
+                error = Constants.CURSOR_NOT_SUPPORTED_IN_BATCH;
+            } else {
+                if (searchCriteria.getSearchString() != null) {
+                    searchCriteria.setSearchString(searchCriteria.getSearchString().trim());
+                }
+                if (searchCriteria.getSearchString() != null && searchCriteria.getSearchString().length() < 2) {
+                    error = Constants.MINIMUM_CHARACTERS_NEEDED;
+                }
+            }
+            if (error != null) {
+                createErrorResponse(response, search.getKey() + ": " + error, HttpStatus.BAD_REQUEST, Constants.FAILED_CONST);
+                return CompletableFuture.completedFuture(response);
+            }
+            searchCacheKeys.put(search.getKey(), searchCacheKeyGenerator.generate(searchCriteria));
+            String facetCacheKey = facetCacheKey(searchCriteria);
+            if (facetCacheKey != null) {
+                facetCacheKeys.put(search.getKey(), facetCacheKey);
+            }
         }
+        CompletableFuture<Map<String, SearchResult>> searched;
         try {
-            searchResult = esUtilService.searchDocuments(cbServerProperties.getDiscussionEntity(), searchCriteria);
+            searched = CompletableFuture.supplyAsync(() -> {
+                Map<String, SearchResult> cached = getCachedSearchResults(searchCacheKeys);
+                Map<String, SearchCriteria> misses = new LinkedHashMap<>();
+                searches.forEach((name, searchCriteria) -> {
+                    if (!cached.containsKey(name)) {
+                        misses.put(name, searchCriteria);
+                    }
+                });
+                log.info("DiscussionServiceImpl::searchDiscussionBatchAsync: {} of {} searches fetched from redis",
+                        cached.size(), searches.size());
+                if (misses.isEmpty()) {
+                    return CompletableFuture.completedFuture(inSearchOrder(searches, cached, Collections.emptyMap()));
+                }
+                Map<String, String> missingFacetCacheKeys = new HashMap<>(facetCacheKeys);
+                missingFacetCacheKeys.keySet().retainAll(misses.keySet());
+                long epoch = searchCacheIndex.currentEpoch();
+                Map<String, SearchResult> cachedFacets = getCachedSearchResults(missingFacetCacheKeys);
+                return esUtilService.multiSearchDocumentsAsync(cbServerProperties.getDiscussionEntity(), misses, cachedFacets.keySet())
+                        .thenComposeAsync(found -> {
+                            List<CompletableFuture<SearchResult>> counted = new ArrayList<>();
+                            found.forEach((name, searchResult) -> {
+                                if (cachedFacets.containsKey(name)) {
+                                    searchResult.setFacets(cachedFacets.get(name).getFacets());
+                                } else if (missingFacetCacheKeys.containsKey(name)) {
+                                    writeBehind(() -> cacheFacets(missingFacetCacheKeys.get(name), misses.get(name), searchResult.getFacets(), epoch));
+                                }
+                                counted.add(resolveExactTotalCountAsync(searchResult, misses.get(name), epoch));
+                            });
+                            return CompletableFuture.allOf(counted.toArray(new CompletableFuture[0])).thenApply(counts -> found);
+                        }, searchExecutor)
+                        .thenComposeAsync(found -> enrichSearchResultsAsync(found, misses, searchCacheKeys, epoch), searchExecutor)
+                        .thenApply(found -> inSearchOrder(searches, cached, found));
+            }, searchExecutor).thenCompose(Function.identity());
+        } catch (RejectedExecutionException e) {
+            createErrorResponse(response, Constants.SEARCH_CAPACITY_EXCEEDED, HttpStatus.SERVICE_UNAVAILABLE, Constants.FAILED_CONST);
+            return CompletableFuture.completedFuture(response);
+        }
+        return searched.handle((searchResults, e) -> {
+            if (e != null) {
+                return createSearchFailureResponse(response, e);
+            }
+            response.getResult().put(Constants.SEARCH_RESULTS, searchResults);
+            createSuccessResponse(response);
+            return response;
+        });
+    }
+
+    private static Map<String, SearchResult> inSearchOrder(Map<String, SearchCriteria> searches,
+                                                           Map<String, SearchResult> cached, Map<String, SearchResult> found) {
+        Map<String, SearchResult> results = new LinkedHashMap<>();
+        for (String name : searches.keySet()) {
+            results.put(name, cached.containsKey(name) ? cached.get(name) : found.get(name));
+        }
+        return results;
+    }
+
+    private ApiResponse createSearchFailureResponse(ApiResponse response, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof CustomException) {
+            createErrorResponse(response, cause.getMessage(), ((CustomException) cause).getHttpStatusCode(), Constants.FAILED_CONST);
+        } else if (cause instanceof RejectedExecutionException) {
+            createErrorResponse(response, Constants.SEARCH_CAPACITY_EXCEEDED, HttpStatus.SERVICE_UNAVAILABLE, Constants.FAILED_CONST);
+        } else {
+            log.error("DiscussionServiceImpl::search: search failed", cause);
+            createErrorResponse(response, cause.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR, Constants.FAILED_CONST);
+        }
+        return response;
+    }
+
+    /**
+     * Replaces a total count that is only a lower bound by the exact count when the search
+     * asks for it. Exact counts are cached like facets, as they do not depend on the page.
+     * Must run on the search executor.
+     */
+    private CompletableFuture<SearchResult> resolveExactTotalCountAsync(SearchResult searchResult, SearchCriteria searchCriteria,
+                                                                      long epoch) {
+        if (!searchCriteria.isExactTotalCount() || searchResult.isTotalCountExact()) {
+            return CompletableFuture.completedFuture(searchResult);
+        }
+        String countCacheKey = searchCacheKeyGenerator.generateCountKey(searchCriteria);
+        SearchResult cachedCount = getCachedSearchResult(countCacheKey);
+        if (cachedCount != null) {
+            setExactTotalCount(searchResult, cachedCount.getTotalCount());
+            return CompletableFuture.completedFuture(searchResult);
+        }
+        return esUtilService.countDocumentsAsync(cbServerProperties.getDiscussionEntity(), searchCriteria).thenApply(count -> {
+            writeBehind(() -> cacheExactTotalCount(countCacheKey, searchCriteria, count, epoch));
+            setExactTotalCount(searchResult, count);
+            return searchResult;
+        });
+    }
+
+    private static void setExactTotalCount(SearchResult searchResult, long count) {
+        searchResult.setTotalCount(count);
+        searchResult.setTotalCountExact(true);
+    }
+
+    private void cacheExactTotalCount(String countCacheKey, SearchCriteria searchCriteria, long count, long epoch) {
+        SearchResult countResult = new SearchResult();
+        setExactTotalCount(countResult, count);
+        cacheSearchPage(countCacheKey, countResult, dimensionTags(searchCriteria.getFilterCriteriaMap()), epoch);
+    }
+
+    /**
+     * Runs the enrichment steps of the projection profile on the discussions found and
+     * caches the page unless the search is paged by cursor. Must run on the search executor.
+     */
+    private CompletableFuture<SearchResult> enrichSearchResultAsync(SearchResult searchResult, SearchCriteria searchCriteria,
+                                                                   String searchCacheKey, long epoch) {
+        return enrichSearchResultsAsync(Collections.singletonMap("", searchResult), Collections.singletonMap("", searchCriteria),
+                searchCacheKey != null ? Collections.singletonMap("", searchCacheKey) : Collections.emptyMap(), epoch)
+                .thenApply(enriched -> searchResult);
+    }
+
+    /**
+     * Enriches several named search results, looking up the authors of all of them at once,
+     * and caches every result that has a cache key. Must run on the search executor.
+     */
+    private CompletableFuture<Map<String, SearchResult>> enrichSearchResultsAsync(Map<String, SearchResult> searchResults,
+                                                                                Map<String, SearchCriteria> searches,
+                                                                                Map<String, String> searchCacheKeys,
+                                                                                long epoch) {
+        Map<String, List<Map<String, Object>>> discussionsByName = new HashMap<>();
+        Set<String> createdByIds = new HashSet<>();
+        searchResults.forEach((name, searchResult) -> {
             List<Map<String, Object>> discussions = objectMapper.convertValue(
                     searchResult.getData(),
                     new TypeReference<List<Map<String, Object>>>() {
                     }
             );
+            discussionsByName.put(name, discussions);
+            if (projectionProfiles.get(searches.get(name).getProjection()).hasEnrichment(Constants.ENRICHMENT_AUTHOR)) {
+                createdByIds.addAll(authorIdsToResolve(discussions));
+            }
+        });
+        return authorProfileResolver.resolveAsync(createdByIds).thenApply(userDetailsMap -> {
+            searchResults.forEach((name, searchResult) -> {
+                SearchCriteria searchCriteria = searches.get(name);
+                List<Map<String, Object>> filteredDiscussions = discussionsByName.get(name);
+                if (projectionProfiles.get(searchCriteria.getProjection()).hasEnrichment(Constants.ENRICHMENT_AUTHOR)) {
+                    filteredDiscussions = attachAuthors(filteredDiscussions, userDetailsMap);
+                }
+                searchResult.setData(objectMapper.valueToTree(filteredDiscussions));
+                String searchCacheKey = searchCacheKeys.get(name);
+                if (searchCacheKey != null) {
+                    List<Map<String, Object>> cachedDiscussions = filteredDiscussions;
+                    writeBehind(() -> cacheSearchResult(searchCacheKey, searchCriteria, searchResult, cachedDiscussions, epoch));
+                }
+            });
+            return searchResults;
+        });
+    }
 
-            Map<String, String> discussionToCreatedByMap = discussions.stream()
-                    .collect(Collectors.toMap(
-                            discussion -> discussion.get(Constants.DISCUSSION_ID).toString(),
-                            discussion -> discussion.get(Constants.CREATED_BY).toString()));
+    private static boolean isCursorSearch(SearchCriteria searchCriteria) {
+        return searchCriteria.isCursorPagination() || StringUtils.isNotEmpty(searchCriteria.getCursor());
+    }
 
-            Set<String> createdByIds = new HashSet<>(discussionToCreatedByMap.values());
+    /**
+     * Indexes the discussion together with a copy of its author's profile, so that
+     * searches can show the author without looking the profile up. The copy is only
+     * kept in the index and is taken from the current profile on every write, so a
+     * write never brings back a profile the author has changed since. It is best
+     * effort: if the profile cannot be read within the snapshot timeout the discussion
+     * is indexed without one, and the author is looked up when it is searched.
+     */
+    private CompletableFuture<RestStatus> indexDiscussion(String discussionId, JsonNode data) {
+        ObjectNode document = data.deepCopy();
+        document.remove(Constants.AUTHOR_SNAPSHOT);
+        document.remove(Constants.AUTHOR_SNAPSHOT_ON);
+        JsonNode createdBy = data.get(Constants.CREATED_BY);
+        if (createdBy != null && createdBy.isTextual()) {
+            addAuthorSnapshot(document, createdBy.asText());
+        }
+        return esUtilService.addDocument(cbServerProperties.getDiscussionEntity(), Constants.INDEX_TYPE, discussionId,
+                document, cbServerProperties.getElasticDiscussionJsonPath());
+    }
 
-            List<Object> redisResults = fetchDataForKeys(
-                    createdByIds.stream().map(id -> Constants.USER_PREFIX + id).collect(Collectors.toList())
-            );
-            Map<String, Object> userDetailsMap = redisResults.stream()
-                    .map(user -> (Map<String, Object>) user)
-                    .collect(Collectors.toMap(
-                            user -> user.get(Constants.USER_ID_KEY).toString(),
-                            user -> user));
-
-            List<String> missingUserIds = createdByIds.stream()
-                    .filter(id -> !userDetailsMap.containsKey(id))
-                    .collect(Collectors.toList());
-
-            if (!missingUserIds.isEmpty()) {
-                List<Object> cassandraResults = fetchUserFromPrimary(missingUserIds);
-                userDetailsMap.putAll(cassandraResults.stream()
-                        .map(user -> (Map<String, Object>) user)
-                        .collect(Collectors.toMap(
-                                user -> user.get(Constants.USER_ID_KEY).toString(),
-                                user -> user)));
-            }
-
-            List<Map<String, Object>> filteredDiscussions = new ArrayList<>();
-            for (Map<String, Object> discussion : discussions) {
-                String discussionId = discussion.get(Constants.DISCUSSION_ID).toString();
-                String createdById = discussionToCreatedByMap.get(discussionId);
-                if (createdById != null && userDetailsMap.containsKey(createdById)) {
-                    discussion.put(Constants.CREATED_BY, userDetailsMap.get(createdById));
-                    filteredDiscussions.add(discussion);
+    private void addAuthorSnapshot(ObjectNode discussion, String userId) {
+        try {
+            Map<String, Object> author = authorProfileResolver.resolveAsync(Collections.singleton(userId))
+                    .get(cbServerProperties.getDiscussionAuthorSnapshotTimeout(), TimeUnit.MILLISECONDS)
+                    .get(userId);
+            if (author != null) {
+                discussion.set(Constants.AUTHOR_SNAPSHOT, objectMapper.valueToTree(author));
+                discussion.put(Constants.AUTHOR_SNAPSHOT_ON, System.currentTimeMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("DiscussionServiceImpl::addAuthorSnapshot: no author snapshot for {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the ids of the authors whose profiles must be looked up, that is of the
+     * discussions without an author snapshot younger than the configured maximum age.
+     */
+    private Set<String> authorIdsToResolve(List<Map<String, Object>> discussions) {
+        return discussions.stream()
+                .filter(discussion -> freshAuthorSnapshot(discussion) == null)
+                .map(discussion -> discussion.get(Constants.CREATED_BY).toString())
+                .collect(Collectors.toSet());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> freshAuthorSnapshot(Map<String, Object> discussion) {
+        Object snapshot = discussion.get(Constants.AUTHOR_SNAPSHOT);
+        Object snapshotOn = discussion.get(Constants.AUTHOR_SNAPSHOT_ON);
+        if (!(snapshot instanceof Map) || !(snapshotOn instanceof Number)) {
+            return null;
+        }
+        long age = System.currentTimeMillis() - ((Number) snapshotOn).longValue();
+        return age <= TimeUnit.SECONDS.toMillis(cbServerProperties.getDiscussionAuthorSnapshotMaxAge())
+                ? (Map<String, Object>) snapshot : null;
+    }
+
+    /**
+     * Replaces the author id of every discussion by the author's profile, taken from a
+     * fresh snapshot or else from the looked up profiles. Discussions whose author was
+     * not found are dropped.
+     */
+    private List<Map<String, Object>> attachAuthors(List<Map<String, Object>> discussions,
+                                                    Map<String, Map<String, Object>> userDetailsMap) {
+        List<Map<String, Object>> filteredDiscussions = new ArrayList<>();
+        for (Map<String, Object> discussion : discussions) {
+            Map<String, Object> snapshot = freshAuthorSnapshot(discussion);
+            discussion.remove(Constants.AUTHOR_SNAPSHOT);
+            discussion.remove(Constants.AUTHOR_SNAPSHOT_ON);
+            if (snapshot != null) {
+                discussion.put(Constants.CREATED_BY, snapshot);
+                filteredDiscussions.add(discussion);
+                continue;
+            }
+            String createdById = discussion.get(Constants.CREATED_BY).toString();
+            if (userDetailsMap.containsKey(createdById)) {
+                discussion.put(Constants.CREATED_BY, userDetailsMap.get(createdById));
+                filteredDiscussions.add(discussion);
+            }
+        }
+        return filteredDiscussions;
+    }
+
+    private void cacheSearchResult(String searchCacheKey, SearchCriteria searchCriteria, SearchResult searchResult,
+                                   List<Map<String, Object>> discussions, long epoch) {
+        cacheSearchPage(searchCacheKey, searchResult, searchCacheTags(searchCriteria, discussions), epoch);
+    }
+
+    /**
+     * Caches a search page under its tags, unless a write was evicted since the epoch
+     * was read before searching the page, as the page may not show that write.
+     */
+    private void cacheSearchPage(String cacheKey, SearchResult page, Collection<String> tags, long epoch) {
+        searchCacheIndex.cache(cacheKey, tags, cbServerProperties.getSearchResultRedisTtl(), epoch,
+                () -> redisTemplate.opsForValue().set(cacheKey, page, cbServerProperties.getSearchResultRedisTtl(), TimeUnit.SECONDS));
+    }
+
+    /**
+     * Returns the key facets of the search are cached under, or null if the search asks
+     * for no facets or continues a cursor, whose pages never carry facets.
+     */
+    private String facetCacheKey(SearchCriteria searchCriteria) {
+        if (searchCriteria.getFacets() == null || searchCriteria.getFacets().isEmpty()
+                || StringUtils.isNotEmpty(searchCriteria.getCursor())) {
+            return null;
+        }
+        return searchCacheKeyGenerator.generateFacetKey(searchCriteria);
+    }
+
+    private Map<String, List<FacetDTO>> getCachedFacets(String facetCacheKey) {
+        SearchResult cachedFacets = getCachedSearchResult(facetCacheKey);
+        return cachedFacets != null ? cachedFacets.getFacets() : null;
+    }
+
+    /**
+     * Facet counts change with any discussion matching the filters, not only with the
+     * discussions shown on a page, so facets are tagged with the filter dimension alone.
+     */
+    private void cacheFacets(String facetCacheKey, SearchCriteria searchCriteria, Map<String, List<FacetDTO>> facets, long epoch) {
+        SearchResult facetResult = new SearchResult();
+        facetResult.setFacets(facets);
+        cacheSearchPage(facetCacheKey, facetResult, dimensionTags(searchCriteria.getFilterCriteriaMap()), epoch);
+    }
+
+    /**
+     * Writes to the cache without delaying the response; an entry that could not be
+     * written is simply searched again.
+     */
+    private void writeBehind(Runnable write) {
+        try {
+            searchExecutor.execute(() -> {
+                try {
+                    write.run();
+                } catch (Exception e) {
+                    log.error("DiscussionServiceImpl::writeBehind: failed to cache search result: {}", e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("DiscussionServiceImpl::writeBehind: search executor saturated, not caching search result");
+        }
+    }
+
+    /**
+     * Reads several cached search pages in one round trip.
+     *
+     * @param searchCacheKeys the cache keys by search name
+     * @return the cached pages by search name, without the searches whose page is not cached
+     */
+    private Map<String, SearchResult> getCachedSearchResults(Map<String, String> searchCacheKeys) {
+        Map<String, SearchResult> cached = new HashMap<>();
+        if (searchCacheKeys.isEmpty()) {
+            return cached;
+        }
+        List<String> names = new ArrayList<>(searchCacheKeys.keySet());
+        try {
+            List<SearchResult> values = redisTemplate.opsForValue().multiGet(
+                    names.stream().map(searchCacheKeys::get).collect(Collectors.toList()));
+            for (int i = 0; i < names.size(); i++) {
+                if (values.get(i) != null) {
+                    cached.put(names.get(i), values.get(i));
                 }
             }
+        } catch (Exception e) {
+            log.warn("DiscussionServiceImpl::getCachedSearchResults: ignoring unreadable cached search results: {}", e.getMessage());
+        }
+        return cached;
+    }
 
-            JsonNode enhancedData = objectMapper.valueToTree(filteredDiscussions);
-            searchResult.setData(enhancedData);
-            redisTemplate.opsForValue().set(generateRedisJwtTokenKey(searchCriteria), searchResult, cbServerProperties.getSearchResultRedisTtl(), TimeUnit.SECONDS);
-            response.getResult().put(Constants.SEARCH_RESULTS, searchResult);
-            createSuccessResponse(response);
-            return response;
+    /**
+     * Reads a cached search page. Pages that cannot be deserialized, for example because
+     * they were written by an older version of {@link SearchResult}, are treated as misses.
+     */
+    private SearchResult getCachedSearchResult(String searchCacheKey) {
+        try {
+            return redisTemplate.opsForValue().get(searchCacheKey);
         } catch (Exception e) {
-            createErrorResponse(response, e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR, Constants.FAILED_CONST);
-            redisTemplate.opsForValue().set(generateRedisJwtTokenKey(searchCriteria), searchResult, cbServerProperties.getSearchResultRedisTtl(), TimeUnit.SECONDS);
-            return response;
+            log.warn("DiscussionServiceImpl::searchDiscussion: ignoring unreadable cached search result: {}", e.getMessage());
+            return null;
         }
     }
 
@@ -342,10 +866,9 @@ public class DiscussionServiceImpl implements DiscussionService {
                         jasonEntity.setDiscussionId(discussionId);
                         jasonEntity.setUpdatedOn(currentTime);
                         discussionRepository.save(jasonEntity);
-                        Map<String, Object> map = objectMapper.convertValue(data, Map.class);
-                        map.put(Constants.IS_ACTIVE, false);
-                        esUtilService.addDocument(cbServerProperties.getDiscussionEntity(), Constants.INDEX_TYPE, discussionId, map, cbServerProperties.getElasticDiscussionJsonPath());
-                        cacheService.putCache(Constants.DISCUSSION_CACHE_PREFIX + discussionId, data);
+                        CompletableFuture<RestStatus> indexed = indexDiscussion(discussionId, data);
+                        cacheService.putCache(Constants.DISCUSSION_CACHE_PREFIX + discussionId, data, currentTime.getTime());
+                        evictSearchPages(indexed, data);
                         log.info("Discussion details deleted successfully");
                         response.setResponseCode(HttpStatus.OK);
                         response.setMessage(Constants.DELETED_SUCCESSFULLY);
@@ -379,7 +902,7 @@ public class DiscussionServiceImpl implements DiscussionService {
                 return response;
             }
 
-            Optional<DiscussionEntity> discussionEntity = Optional.of(discussionRepository.findById(discussionId).orElse(null));
+            Optional<DiscussionEntity> discussionEntity = findDiscussion(discussionId);
             if (!discussionEntity.isPresent()) {
                 createErrorResponse(response, Constants.DISCUSSION_NOT_FOUND, HttpStatus.BAD_REQUEST, Constants.FAILED);
                 return response;
@@ -452,8 +975,10 @@ public class DiscussionServiceImpl implements DiscussionService {
             JsonNode jsonNode = objectMapper.valueToTree(discussionData);
             discussionDbData.setData(jsonNode);
             discussionRepository.save(discussionDbData);
-            esUtilService.addDocument(cbServerProperties.getDiscussionEntity(), Constants.INDEX_TYPE, discussionDbData.getDiscussionId(), discussionData, cbServerProperties.getElasticDiscussionJsonPath());
-            cacheService.putCache(Constants.DISCUSSION_CACHE_PREFIX + discussionDbData.getDiscussionId(), discussionData);
+            CompletableFuture<RestStatus> indexed = indexDiscussion(discussionDbData.getDiscussionId(), jsonNode);
+            cacheService.putCache(Constants.DISCUSSION_CACHE_PREFIX + discussionDbData.getDiscussionId(), discussionData, currentTime.getTime());
+            evictSearchPagesWhenIndexed(indexed, Arrays.asList(Constants.SEARCH_TAG_ID + discussionId,
+                    Constants.SEARCH_TAG_SORT + Constants.UP_VOTE_COUNT, Constants.SEARCH_TAG_SORT + Constants.DOWN_VOTE_COUNT));
             response.setResponseCode(HttpStatus.OK);
             response.getParams().setStatus(Constants.SUCCESS);
         } catch (Exception e) {
@@ -463,18 +988,6 @@ public class DiscussionServiceImpl implements DiscussionService {
         return response;
     }
 
-    public String generateRedisJwtTokenKey(Object requestPayload) {
-        if (requestPayload != null) {
-            try {
-                String reqJsonString = objectMapper.writeValueAsString(requestPayload);
-                return JWT.create().withClaim(Constants.REQUEST_PAYLOAD, reqJsonString).sign(Algorithm.HMAC256(Constants.JWT_SECRET_KEY));
-            } catch (JsonProcessingException e) {
-                log.error("Error occurred while converting json object to json string", e);
-            }
-        }
-        return "";
-    }
-
     public void createSuccessResponse(ApiResponse response) {
         response.setParams(new ApiRespParam());
         response.getParams().setStatus(Constants.SUCCESS);
@@ -507,81 +1020,6 @@ public class DiscussionServiceImpl implements DiscussionService {
         return str.toString();
     }
 
-    public List<Object> fetchDataForKeys(List<String> keys) {
-        // Fetch values for all keys from Redis
-        List<Object> values = redisTemp.opsForValue().multiGet(keys);
-
-        // Create a map of key-value pairs, converting stringified JSON objects to User objects
-        return keys.stream()
-                .filter(key -> values.get(keys.indexOf(key)) != null) // Filter out null values
-                .map(key -> {
-                    String stringifiedJson = (String) values.get(keys.indexOf(key)); // Cast the value to String
-                    try {
-                        // Convert the stringified JSON to a User object using ObjectMapper
-                        return objectMapper.readValue(stringifiedJson, Object.class); // You can map this to a specific User type if needed
-                    } catch (Exception e) {
-                        // Handle any exceptions during deserialization
-                        e.printStackTrace();
-                        return null; // Return null in case of error
-                    }
-                })
-                .collect(Collectors.toList());
-    }
-
-    public List<Object> fetchUserFromPrimary(List<String> userIds) {
-        List<Object> userList = new ArrayList<>();
-        Map<String, Object> propertyMap = new HashMap<>();
-        propertyMap.put(Constants.ID, userIds);
-        List<Map<String, Object>> userInfoList = cassandraOperation.getRecordsByPropertiesWithoutFiltering(
-                Constants.KEYSPACE_SUNBIRD, Constants.USER_TABLE, propertyMap,
-                Arrays.asList(Constants.PROFILE_DETAILS, Constants.FIRST_NAME, Constants.ID), null);
-
-        userList = userInfoList.stream()
-                .map(userInfo -> {
-                    Map<String, Object> userMap = new HashMap<>();
-
-                    // Extract user ID and user name
-                    String userId = (String) userInfo.get(Constants.ID);
-                    String userName = (String) userInfo.get(Constants.FIRST_NAME);
-
-                    userMap.put(Constants.USER_ID_KEY, userId);
-                    userMap.put(Constants.FIRST_NAME_KEY, userName);
-
-                    // Process profile details if present
-                    String profileDetails = (String) userInfo.get(Constants.PROFILE_DETAILS);
-                    if (StringUtils.isNotBlank(profileDetails)) {
-                        try {
-                            // Convert JSON profile details to a Map
-                            Map<String, Object> profileDetailsMap = objectMapper.readValue(profileDetails,
-                                    new TypeReference<HashMap<String, Object>>() {});
-
-                            // Check for profile image and add to userMap if available
-                            if (MapUtils.isNotEmpty(profileDetailsMap)) {
-                                if (profileDetailsMap.containsKey(Constants.PROFILE_IMG) && StringUtils.isNotBlank((String) profileDetailsMap.get(Constants.PROFILE_IMG))){
-                                    userMap.put(Constants.PROFILE_IMG_KEY, (String) profileDetailsMap.get(Constants.PROFILE_IMG));
-                                }
-                                if (profileDetailsMap.containsKey(Constants.DESIGNATION_KEY) && StringUtils.isNotEmpty((String) profileDetailsMap.get(Constants.DESIGNATION_KEY))) {
-
-                                    userMap.put(Constants.DESIGNATION_KEY, (String) profileDetailsMap.get(Constants.PROFILE_IMG));
-                                }
-                                if(profileDetailsMap.containsKey(Constants.EMPLOYMENT_DETAILS) && MapUtils.isNotEmpty(
-                                        (Map<?, ?>) profileDetailsMap.get(Constants.EMPLOYMENT_DETAILS)) && ((Map<?, ?>) profileDetailsMap.get(Constants.EMPLOYMENT_DETAILS)).containsKey(Constants.DEPARTMENT_KEY) && StringUtils.isNotBlank(
-                                        (String) ((Map<?, ?>) profileDetailsMap.get(Constants.EMPLOYMENT_DETAILS)).get(Constants.DEPARTMENT_KEY))){
-                                    userMap.put(Constants.DEPARTMENT, (String) ((Map<?, ?>) profileDetailsMap.get(Constants.EMPLOYMENT_DETAILS)).get(Constants.DEPARTMENT_KEY));
-
-                                }
-                            }
-                        } catch (JsonProcessingException e) {
-                            log.error("Error occurred while converting json object to json string", e);
-                        }
-                    }
-
-                    return userMap;
-                })
-                .collect(Collectors.toList());
-        return userList;
-    }
-
     @Override
     public ApiResponse createAnswerPost(JsonNode answerPostData, String token) {
         log.info("DiscussionService::createAnswerPost:creating answerPost");
@@ -613,14 +1051,19 @@ public class DiscussionServiceImpl implements DiscussionService {
             jsonNodeEntity.setIsActive(true);
             ((ObjectNode) answerPostData).put(Constants.IS_ACTIVE, true);
             jsonNodeEntity.setData(answerPostData);
-            DiscussionEntity saveJsonEntity = discussionRepository.save(jsonNodeEntity);
+            String parentDiscussionId = answerPostData.get(Constants.PARENT_DISCUSSION_ID).asText();
+            VersionedValue parentDiscussion = updateAnswerPostToDiscussion(parentDiscussionId, jsonNodeEntity);
             ObjectMapper objectMapper = new ObjectMapper();
             ObjectNode jsonNode = objectMapper.createObjectNode();
-            jsonNode.setAll((ObjectNode) saveJsonEntity.getData());
+            jsonNode.setAll((ObjectNode) jsonNodeEntity.getData());
             Map<String, Object> map = objectMapper.convertValue(jsonNode, Map.class);
-            esUtilService.addDocument(cbServerProperties.getDiscussionEntity(), Constants.INDEX_TYPE, String.valueOf(id), map, cbServerProperties.getElasticDiscussionJsonPath());
-            cacheService.putCache(Constants.DISCUSSION_CACHE_PREFIX + String.valueOf(id), jsonNode);
-            updateAnswerPostToDiscussion(answerPostData.get(Constants.PARENT_DISCUSSION_ID).asText(), String.valueOf(id));
+            CompletableFuture<RestStatus> indexed = indexDiscussion(String.valueOf(id), jsonNode);
+            Map<String, VersionedValue> cacheEntries = new HashMap<>();
+            cacheEntries.put(Constants.DISCUSSION_CACHE_PREFIX + String.valueOf(id), new VersionedValue(jsonNode, currentTime.getTime()));
+            cacheEntries.put(Constants.DISCUSSION_CACHE_PREFIX + parentDiscussionId, parentDiscussion);
+            cacheService.putAll(cacheEntries);
+            clearNegativeCache(String.valueOf(id));
+            evictSearchPages(indexed, jsonNode);
             log.info("AnswerPost created successfully");
             map.put(Constants.CREATED_ON, currentTime);
             response.setResponseCode(HttpStatus.CREATED);
@@ -634,22 +1077,195 @@ public class DiscussionServiceImpl implements DiscussionService {
         return response;
     }
 
+    /**
+     * Returns the discussion data as reads return it, with the active flag and the
+     * creation time taken from the entity columns, written the way the create path
+     * stores them in the data, and without the author snapshot that only belongs in the
+     * index. Every read path caches this view, so cache hits, the raw passthrough
+     * included, return the same fields as cache misses.
+     *
+     * @param discussionEntity The discussion entity
+     * @return The discussion data to cache and return
+     */
+    private JsonNode readView(DiscussionEntity discussionEntity) {
+        if (!(discussionEntity.getData() instanceof ObjectNode)) {
+            return discussionEntity.getData();
+        }
+        ObjectNode view = discussionEntity.getData().deepCopy();
+        view.remove(Constants.AUTHOR_SNAPSHOT);
+        view.remove(Constants.AUTHOR_SNAPSHOT_ON);
+        view.put(Constants.IS_ACTIVE, discussionEntity.getIsActive());
+        if (discussionEntity.getCreatedOn() != null) {
+            view.put(Constants.CREATED_ON, discussionEntity.getCreatedOn().toString());
+        }
+        return view;
+    }
+
+    /**
+     * Loads the discussion from the database and caches it. Concurrent loads of the same
+     * discussion are coalesced so only one of them queries the database; the returned
+     * entity may therefore be shared and must not be modified.
+     *
+     * @param discussionId The id of the discussion to load
+     * @return The discussion entity, if it exists
+     */
+    private Optional<DiscussionEntity> loadDiscussion(String discussionId) {
+        if (cacheService.isNegativeCached(Constants.DISCUSSION_CACHE_PREFIX + discussionId)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(singleFlight.execute(Constants.DISCUSSION_CACHE_PREFIX + discussionId, () -> {
+            DiscussionEntity discussionEntity = discussionRepository.findById(discussionId).orElse(null);
+            if (discussionEntity != null) {
+                cacheService.putCache(Constants.DISCUSSION_CACHE_PREFIX + discussionId, readView(discussionEntity), cacheVersion(discussionEntity));
+            } else {
+                cacheService.putNegativeCache(Constants.DISCUSSION_CACHE_PREFIX + discussionId);
+            }
+            return discussionEntity;
+        }));
+    }
+
+    /**
+     * Loads the discussion from the database for modification, answering from the
+     * negative cache when the id is known not to exist.
+     *
+     * @param discussionId The id of the discussion to load
+     * @return The discussion entity, if it exists
+     */
+    private Optional<DiscussionEntity> findDiscussion(String discussionId) {
+        if (cacheService.isNegativeCached(Constants.DISCUSSION_CACHE_PREFIX + discussionId)) {
+            return Optional.empty();
+        }
+        Optional<DiscussionEntity> discussionEntity = discussionRepository.findById(discussionId);
+        if (!discussionEntity.isPresent()) {
+            cacheService.putNegativeCache(Constants.DISCUSSION_CACHE_PREFIX + discussionId);
+        }
+        return discussionEntity;
+    }
+
+    /**
+     * Returns the tags a cached search page depends on: the discussions it shows, the
+     * most selective filter it was selected by, or {@link Constants#SEARCH_TAG_ALL} if
+     * any new discussion may appear on it, and the field it is sorted by.
+     */
+    private Set<String> searchCacheTags(SearchCriteria searchCriteria, List<Map<String, Object>> discussions) {
+        Set<String> tags = new HashSet<>();
+        for (Map<String, Object> discussion : discussions) {
+            tags.add(Constants.SEARCH_TAG_ID + discussion.get(Constants.DISCUSSION_ID));
+            Object createdBy = discussion.get(Constants.CREATED_BY);
+            Object authorId = createdBy instanceof Map ? ((Map<?, ?>) createdBy).get(Constants.USER_ID_KEY) : createdBy;
+            if (authorId != null) {
+                tags.add(Constants.SEARCH_TAG_AUTHOR + authorId);
+            }
+        }
+        tags.addAll(dimensionTags(searchCriteria.getFilterCriteriaMap()));
+        if (StringUtils.isNotBlank(searchCriteria.getOrderBy())) {
+            tags.add(Constants.SEARCH_TAG_SORT + searchCriteria.getOrderBy());
+        }
+        return tags;
+    }
+
+    private Set<String> dimensionTags(Map<String, Object> filterCriteriaMap) {
+        if (filterCriteriaMap != null) {
+            for (String dimension : SEARCH_CACHE_DIMENSIONS) {
+                Object value = filterCriteriaMap.get(dimension);
+                if (value instanceof String) {
+                    return Collections.singleton(dimension + Constants.SEARCH_TAG_SEPARATOR + value);
+                }
+                if (value instanceof List && !((List<?>) value).isEmpty()
+                        && ((List<?>) value).stream().allMatch(String.class::isInstance)) {
+                    return ((List<?>) value).stream()
+                            .map(element -> dimension + Constants.SEARCH_TAG_SEPARATOR + element)
+                            .collect(Collectors.toSet());
+                }
+            }
+        }
+        return Collections.singleton(Constants.SEARCH_TAG_ALL);
+    }
+
+    /**
+     * Evicts the cached search pages that may show, or may now have to show, the given
+     * versions of discussions once the write is searchable. Pass both the previous and
+     * the updated version when a write changes a filter field.
+     */
+    private void evictSearchPages(CompletableFuture<RestStatus> indexed, JsonNode... discussions) {
+        Set<String> tags = new HashSet<>();
+        tags.add(Constants.SEARCH_TAG_ALL);
+        for (JsonNode discussion : discussions) {
+            if (discussion.hasNonNull(Constants.DISCUSSION_ID)) {
+                tags.add(Constants.SEARCH_TAG_ID + discussion.get(Constants.DISCUSSION_ID).asText());
+            }
+            for (String dimension : SEARCH_CACHE_DIMENSIONS) {
+                if (discussion.hasNonNull(dimension)) {
+                    tags.add(dimension + Constants.SEARCH_TAG_SEPARATOR + discussion.get(dimension).asText());
+                }
+            }
+        }
+        evictSearchPagesWhenIndexed(indexed, tags);
+    }
+
+    /**
+     * Evicting before the write is searchable would let a concurrent search cache the
+     * old result again, so pages are evicted once indexing completed or failed.
+     */
+    private void evictSearchPagesWhenIndexed(CompletableFuture<RestStatus> indexed, Collection<String> tags) {
+        indexed.whenCompleteAsync((status, e) -> searchCacheIndex.evict(tags), evictionExecutor);
+    }
+
+    private void clearNegativeCache(String discussionId) {
+        cacheService.deleteNegativeCache(Arrays.asList(Constants.DISCUSSION_CACHE_PREFIX + discussionId,
+                Constants.INVALID_PARENT_CACHE_PREFIX + discussionId));
+    }
+
+    /**
+     * Returns the version the discussion is cached with: the time it was last modified,
+     * so an older copy of the discussion never replaces a newer one in the cache.
+     */
+    private long cacheVersion(DiscussionEntity discussionEntity) {
+        Timestamp lastModified = discussionEntity.getUpdatedOn() != null ? discussionEntity.getUpdatedOn() : discussionEntity.getCreatedOn();
+        return lastModified != null ? lastModified.getTime() : 0L;
+    }
+
     private boolean validateDiscussionId(String discussionId) {
-        DiscussionEntity discussionEntity = discussionRepository.findById(discussionId).orElse(null);
-        if (discussionEntity == null || !discussionEntity.getIsActive()) {
+        if (cacheService.isNegativeCached(Constants.INVALID_PARENT_CACHE_PREFIX + discussionId)) {
             return false;
         }
-        JsonNode data = discussionEntity.getData();
-        String type = data.get(Constants.TYPE).asText();
-        if (type.equals(Constants.ANSWER_POST)) {
+        DiscussionEntity discussionEntity = loadDiscussion(discussionId).orElse(null);
+        if (discussionEntity == null || !discussionEntity.getIsActive()
+                || Constants.ANSWER_POST.equals(discussionEntity.getData().get(Constants.TYPE).asText())) {
+            cacheService.putNegativeCache(Constants.INVALID_PARENT_CACHE_PREFIX + discussionId);
             return false;
         }
         return true;
     }
 
-    private void updateAnswerPostToDiscussion(String parentDiscussionId, String discussionId) {
-        DiscussionEntity discussionEntity = discussionRepository.findById(parentDiscussionId).get();
-        JsonNode data = discussionEntity.getData();
+    /**
+     * Saves the answer post and links it to its parent discussion in one transaction, so
+     * that neither is stored without the other. The parent is read from the database and
+     * locked for the update, never taken from the cache, so answer posts created
+     * concurrently do not overwrite each other. The updated parent is returned rather
+     * than cached so the caller can write it together with the answer post.
+     *
+     * @return The updated parent discussion and the version to cache it with
+     */
+    private VersionedValue updateAnswerPostToDiscussion(String parentDiscussionId, DiscussionEntity answerPost) {
+        Timestamp currentTime = new Timestamp(System.currentTimeMillis());
+        DiscussionEntity saveJsonEntity = transactionTemplate.execute(status -> {
+            DiscussionEntity discussionEntity = discussionRepository.findWithLockByDiscussionId(parentDiscussionId)
+                    .orElseThrow(() -> new CustomException(Constants.FAILED, Constants.INVALID_PARENT_DISCUSSION_ID, HttpStatus.BAD_REQUEST));
+            discussionRepository.save(answerPost);
+            addAnswerPost(discussionEntity, answerPost.getDiscussionId(), currentTime);
+            return discussionRepository.save(discussionEntity);
+        });
+        log.info("DiscussionService::updateAnswerPostToDiscussion: Discussion entity updated successfully");
+        ObjectNode jsonNode = objectMapper.createObjectNode();
+        jsonNode.setAll((ObjectNode) saveJsonEntity.getData());
+        CompletableFuture<RestStatus> indexed = indexDiscussion(parentDiscussionId, jsonNode);
+        evictSearchPages(indexed, jsonNode);
+        return new VersionedValue(jsonNode, currentTime.getTime());
+    }
+
+    private void addAnswerPost(DiscussionEntity discussionEntity, String discussionId, Timestamp currentTime) {
+        JsonNode data = discussionEntity.getData().deepCopy();
         if (data.has(Constants.ANSWER_POSTS)) {
             Set<String> answerPostSet = new HashSet<>();
             ArrayNode existingAnswerPosts = (ArrayNode) data.get(Constants.ANSWER_POSTS);
@@ -664,14 +1280,9 @@ public class DiscussionServiceImpl implements DiscussionService {
             ((ObjectNode) data).put(Constants.ANSWER_POSTS, arrayNode);
             ((ObjectNode) data).put(Constants.ANSWER_POST_COUNT, 1);
         }
+        ((ObjectNode) data).put(Constants.UPDATED_ON, String.valueOf(currentTime));
+        discussionEntity.setUpdatedOn(currentTime);
         discussionEntity.setData(data);
-        DiscussionEntity saveJsonEntity = discussionRepository.save(discussionEntity);
-        log.info("DiscussionService::updateAnswerPostToDiscussion: Discussion entity updated successfully");
-        ObjectNode jsonNode = objectMapper.createObjectNode();
-        jsonNode.setAll((ObjectNode) saveJsonEntity.getData());
-        Map<String, Object> map = objectMapper.convertValue(jsonNode, Map.class);
-        esUtilService.addDocument(cbServerProperties.getDiscussionEntity(), Constants.INDEX_TYPE, parentDiscussionId, map, cbServerProperties.getElasticDiscussionJsonPath());
-        cacheService.putCache(Constants.DISCUSSION_CACHE_PREFIX + parentDiscussionId, jsonNode);
     }
 
     @Override
@@ -717,11 +1328,15 @@ public class DiscussionServiceImpl implements DiscussionService {
                 return returnErrorMsg(Constants.DISCUSSION_SUSPENDED, HttpStatus.ALREADY_REPORTED, response, Constants.FAILED);
             }
 
+            JsonNode previousData = data.deepCopy();
             ((ObjectNode) data).put(Constants.STATUS, Constants.SUSPENDED);
             ArrayNode reportedByNode = data.has(Constants.REPORTED_BY) ? (ArrayNode) data.get(Constants.REPORTED_BY) : objectMapper.createArrayNode();
             reportedByNode.add(userId);
             ((ObjectNode) data).put(Constants.REPORTED_REASON, objectMapper.valueToTree(reportData.get(Constants.REPORTED_REASON)));
             ((ObjectNode) data).put(Constants.REPORTED_BY, reportedByNode);
+            Timestamp currentTime = new Timestamp(System.currentTimeMillis());
+            ((ObjectNode) data).put(Constants.UPDATED_ON, String.valueOf(currentTime));
+            discussionEntity.setUpdatedOn(currentTime);
 
             discussionEntity.setData(data);
             discussionRepository.save(discussionEntity);
@@ -729,9 +1344,9 @@ public class DiscussionServiceImpl implements DiscussionService {
 
             ObjectNode jsonNode = objectMapper.createObjectNode();
             jsonNode.setAll((ObjectNode) discussionEntity.getData());
-            Map<String, Object> map = objectMapper.convertValue(jsonNode, Map.class);
-            esUtilService.addDocument(cbServerProperties.getDiscussionEntity(), Constants.INDEX_TYPE, discussionId, map, cbServerProperties.getElasticDiscussionJsonPath());
-            cacheService.putCache(Constants.DISCUSSION_CACHE_PREFIX + discussionId, jsonNode);
+            CompletableFuture<RestStatus> indexed = indexDiscussion(discussionId, jsonNode);
+            cacheService.putCache(Constants.DISCUSSION_CACHE_PREFIX + discussionId, jsonNode, currentTime.getTime());
+            evictSearchPages(indexed, previousData, jsonNode);
             return response;
         } catch (Exception e) {
             log.error("DiscussionService::report: Failed to report discussion", e);
@@ -827,4 +1442,40 @@ public class DiscussionServiceImpl implements DiscussionService {
             return response;
         }
     }
+
+    /**
+     * Loads the hottest active discussions into the cache: the most up voted, the most
+     * answered and the most recently updated ones, up to the given number of each.
+     *
+     * @param size The number of discussions to pick by each ranking
+     * @return The number of discussions written to the cache
+     */
+    @Override
+    public int warmUpDiscussionCache(int size) {
+        log.info("DiscussionServiceImpl::warmUpDiscussionCache");
+        QueryBuilder activeDiscussions = QueryBuilders.boolQuery().filter(QueryBuilders.termQuery(Constants.IS_ACTIVE, true));
+        List<SortBuilder<?>> rankings = Arrays.asList(
+                SortBuilders.fieldSort(Constants.UP_VOTE_COUNT).order(SortOrder.DESC).unmappedType("long"),
+                SortBuilders.fieldSort(Constants.ANSWER_POST_COUNT).order(SortOrder.DESC).unmappedType("long"),
+                SortBuilders.fieldSort(Constants.UPDATED_ON + Constants.KEYWORD).order(SortOrder.DESC).unmappedType("keyword"));
+        Set<String> discussionIds = new LinkedHashSet<>();
+        try {
+            for (SortBuilder<?> ranking : rankings) {
+                discussionIds.addAll(esUtilService.searchDocumentIds(cbServerProperties.getDiscussionEntity(), activeDiscussions, ranking, size));
+            }
+        } catch (Exception e) {
+            log.error("Failed to fetch discussions to warm up the cache: {}", e.getMessage(), e);
+            return 0;
+        }
+        if (discussionIds.isEmpty()) {
+            return 0;
+        }
+        Map<String, VersionedValue> cacheEntries = new HashMap<>();
+        for (DiscussionEntity discussionEntity : discussionRepository.findAllById(discussionIds)) {
+            cacheEntries.put(Constants.DISCUSSION_CACHE_PREFIX + discussionEntity.getDiscussionId(),
+                    new VersionedValue(readView(discussionEntity), cacheVersion(discussionEntity)));
+        }
+        cacheService.putAll(cacheEntries);
+        return cacheEntries.size();
+    }
 }
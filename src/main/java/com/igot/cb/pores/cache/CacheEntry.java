@@ -0,0 +1,50 @@
+package com.igot.cb.pores.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A cached value together with its version and logical expiry. The version lets
+ * writers refuse to replace a newer value with an older one. The logical expiry is
+ * kept separate from the Redis TTL so that readers can still be served the value
+ * after it went stale while a single background task refreshes it.
+ * <p>
+ * See {@link com.igot.cb.pores.cache.codec.CacheEntryCodec} for how entries are
+ * stored in Redis. Values written before the header was introduced are read as
+ * version 0 and always fresh.
+ */
+@Getter
+@AllArgsConstructor
+public class CacheEntry {
+
+  private final String value;
+
+  /** Monotonically increasing version of the value, 0 if unversioned. */
+  private final long version;
+
+  /** Epoch millis after which the value is considered stale, 0 if unknown. */
+  private final long softExpiry;
+
+  /** Time in millis it took to compute the value, used to schedule early refreshes. */
+  private final long delta;
+
+  /**
+   * Decides whether this reader should refresh the entry. Once the logical expiry
+   * has passed every reader asks for a refresh; before that a reader does so with
+   * a probability that grows as the expiry approaches and with the cost of
+   * recomputing the value (XFetch), which spreads refreshes of hot keys out instead
+   * of letting them all expire at once.
+   *
+   * @param beta values above 1 favour earlier refreshes, below 1 later ones
+   * @return true if the caller should trigger a refresh
+   */
+  public boolean shouldRefresh(double beta) {
+    if (softExpiry <= 0) {
+      return false;
+    }
+    double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+    return System.currentTimeMillis() - delta * beta * Math.log(random) >= softExpiry;
+  }
+}
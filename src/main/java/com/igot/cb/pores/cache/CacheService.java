@@ -1,6 +1,9 @@
 package com.igot.cb.pores.cache;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.igot.cb.pores.cache.codec.CacheEntryCodec;
 import com.igot.cb.pores.util.Constants;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,57 +11,463 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 @Slf4j
 public class CacheService {
 
+  private static final byte[] NEGATIVE_CACHE_MARKER = bytes("1");
+
+  /**
+   * Writes ARGV[1] with a TTL of ARGV[3] seconds unless the current value carries a
+   * version newer than ARGV[2]. Returns 1 if the value was written, 0 otherwise.
+   */
+  private static final byte[] COMPARE_AND_SET_SCRIPT = bytes(
+      "local current = redis.call('GET', KEYS[1]) "
+          + "if current then "
+          + "  local version = tonumber(string.match(current, '^~%a?(%d+)|')) "
+          + "  if version and version > tonumber(ARGV[2]) then return 0 end "
+          + "end "
+          + "redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[3]) "
+          + "return 1");
+
   @Autowired
   private JedisPool jedisPool;
   @Autowired
   private ObjectMapper objectMapper;
+  @Autowired
+  private CacheEntryCodec cacheEntryCodec;
 
   @Value("${spring.redis.cacheTtl}")
   private long cacheTtl;
 
+  @Value("${spring.redis.cacheSoftTtl}")
+  private long cacheSoftTtl;
+
+  @Value("${spring.redis.negativeCacheTtl}")
+  private long negativeCacheTtl;
+
+  @Value("${spring.redis.earlyRefresh.beta}")
+  private double earlyRefreshBeta;
+
+  @Value("${spring.redis.earlyRefresh.defaultDelta}")
+  private long earlyRefreshDefaultDelta;
+
+  @Value("${spring.redis.earlyRefresh.threads}")
+  private int earlyRefreshThreads;
+
+  @Value("${spring.redis.nearCache.enabled}")
+  private boolean nearCacheEnabled;
+
+  @Value("${spring.redis.nearCache.maxSizeInBytes}")
+  private long nearCacheMaxSizeInBytes;
+
+  @Value("${spring.redis.nearCache.ttl}")
+  private long nearCacheTtl;
+
+  @Value("${spring.redis.nearCache.invalidationChannel}")
+  private String invalidationChannel;
+
+  /**
+   * In-process copy of the hottest Redis entries, bounded by the approximate heap
+   * footprint of the cached strings. Peers are told to drop their copy over Redis
+   * pub/sub whenever this node writes or deletes a key.
+   */
+  private Cache<String, CacheEntry> nearCache;
+
+  /**
+   * Invalidation counters of the near cache, striped by key hash. A value read from or
+   * written to Redis only enters the near cache if no invalidation of its stripe
+   * happened since before the Redis call; otherwise a peer's newer write, announced
+   * while the call was in flight, could be shadowed by the older value.
+   */
+  private final AtomicLongArray invalidationEpochs = new AtomicLongArray(4096);
+
+  private ThreadPoolExecutor refreshExecutor;
+
+  private final Set<String> refreshesInProgress = ConcurrentHashMap.newKeySet();
+
+  private final String nodeId = UUID.randomUUID().toString();
+
+  /** Told about keys other nodes invalidated, for in-process copies kept outside the near cache. */
+  private final List<Consumer<String>> invalidationListeners = new CopyOnWriteArrayList<>();
+
+  @PostConstruct
+  public void init() {
+    nearCache = Caffeine.newBuilder()
+        .maximumWeight(nearCacheMaxSizeInBytes)
+        .weigher((String key, CacheEntry entry) -> 2 * (key.length() + entry.getValue().length()))
+        .expireAfterWrite(nearCacheTtl, TimeUnit.SECONDS)
+        .build();
+    refreshExecutor = new ThreadPoolExecutor(earlyRefreshThreads, earlyRefreshThreads, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(1000));
+    refreshExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    refreshExecutor.shutdown();
+  }
+
   public Jedis getJedis() {
     try (Jedis jedis = jedisPool.getResource()) {
       return jedis;
     }
   }
 
-  public void putCache(String key, Object object) {
+  /**
+   * Caches the value unless Redis already holds a newer version of it. The check and
+   * the write happen atomically on the Redis server, so a slow writer holding an old
+   * copy can never replace the value written by a faster one.
+   *
+   * @param key     the cache key, without the Redis key prefix
+   * @param object  the value to cache
+   * @param version the version of the value, for example its last modified time
+   * @return true if the value was written
+   */
+  public boolean putCache(String key, Object object, long version) {
+    return compareAndSet(key, object, version, earlyRefreshDefaultDelta);
+  }
+
+  private boolean compareAndSet(String key, Object object, long version, long delta) {
     try {
-      String data = objectMapper.writeValueAsString(object);
+      CacheEntry entry = newEntry(objectMapper.writeValueAsString(object), version, delta);
+      boolean written;
+      long epoch = invalidationEpoch(key);
       try (Jedis jedis = jedisPool.getResource()) {
-        jedis.set(Constants.REDIS_KEY_PREFIX + key, data);
-        jedis.expire(Constants.REDIS_KEY_PREFIX + key, cacheTtl);
+        Object result = jedis.eval(COMPARE_AND_SET_SCRIPT, Collections.singletonList(redisKey(key)),
+            Arrays.asList(cacheEntryCodec.encode(entry), bytes(String.valueOf(version)), bytes(String.valueOf(cacheTtl))));
+        written = Long.valueOf(1L).equals(result);
+        if (written) {
+          publishInvalidation(jedis, key);
+        }
       }
+      if (written) {
+        populateNearCache(key, entry, epoch);
+      } else {
+        invalidateNearCache(key);
+      }
+      return written;
     } catch (Exception e) {
+      invalidateNearCache(key);
       log.error("Error while putting data in Redis cache: {} ", e.getMessage());
+      return false;
     }
   }
 
   public String getCache(String key) {
-    try {
-      return getJedis().get(Constants.REDIS_KEY_PREFIX + key);
-    } catch (Exception e) {
+    CacheEntry entry = getEntry(key);
+    return entry != null ? entry.getValue() : null;
+  }
+
+  /**
+   * Returns the cached value even if it is logically stale. When the value is
+   * stale, or is picked for an early refresh, the reloader is run once in the
+   * background and its result replaces the cached value.
+   *
+   * @param key      the cache key, without the Redis key prefix
+   * @param reloader computes the current value; returning null leaves the entry as is
+   * @return the cached value, or null if the key is not cached
+   */
+  public String getCache(String key, Supplier<VersionedValue> reloader) {
+    CacheEntry entry = getEntry(key);
+    if (entry == null) {
       return null;
     }
+    if (entry.shouldRefresh(earlyRefreshBeta)) {
+      refreshInBackground(key, reloader);
+    }
+    return entry.getValue();
   }
 
-  public Long deleteCache(String key) {
+  private CacheEntry getEntry(String key) {
+    if (nearCacheEnabled) {
+      CacheEntry cached = nearCache.getIfPresent(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    long epoch = invalidationEpoch(key);
     try (Jedis jedis = jedisPool.getResource()) {
-      Long result = jedis.del(Constants.REDIS_KEY_PREFIX + key);
-      if (result == 1) {
-        log.info("Field {} deleted successfully from key {}.", key);
+      CacheEntry entry = cacheEntryCodec.decode(jedis.get(redisKey(key)));
+      if (entry != null) {
+        populateNearCache(key, entry, epoch);
+      }
+      return entry;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private void refreshInBackground(String key, Supplier<VersionedValue> reloader) {
+    if (!refreshesInProgress.add(key)) {
+      return;
+    }
+    try {
+      refreshExecutor.execute(() -> {
+        try {
+          long start = System.currentTimeMillis();
+          VersionedValue value = reloader.get();
+          if (value != null) {
+            compareAndSet(key, value.getValue(), value.getVersion(), System.currentTimeMillis() - start);
+          }
+        } catch (Exception e) {
+          log.error("Error while refreshing Redis cache entry {}: {} ", key, e.getMessage());
+        } finally {
+          refreshesInProgress.remove(key);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      refreshesInProgress.remove(key);
+      log.warn("Refresh of Redis cache entry {} skipped, refresh queue is full", key);
+    }
+  }
+
+  /**
+   * Resolves several keys at once: near cache hits are served locally and the
+   * remaining keys are fetched with a single MGET.
+   *
+   * @param keys the cache keys, without the Redis key prefix
+   * @return the cached values by key; keys that are not cached are absent
+   */
+  public Map<String, String> getAll(List<String> keys) {
+    Map<String, String> result = new HashMap<>();
+    List<String> missingKeys = new ArrayList<>();
+    for (String key : keys) {
+      CacheEntry cached = nearCacheEnabled ? nearCache.getIfPresent(key) : null;
+      if (cached != null) {
+        result.put(key, cached.getValue());
       } else {
-        log.warn("Field {} not found in key {}.", key);
+        missingKeys.add(key);
       }
+    }
+    if (missingKeys.isEmpty()) {
       return result;
+    }
+    long[] epochs = new long[missingKeys.size()];
+    for (int i = 0; i < missingKeys.size(); i++) {
+      epochs[i] = invalidationEpoch(missingKeys.get(i));
+    }
+    try (Jedis jedis = jedisPool.getResource()) {
+      byte[][] redisKeys = missingKeys.stream().map(CacheService::redisKey).toArray(byte[][]::new);
+      List<byte[]> values = jedis.mget(redisKeys);
+      for (int i = 0; i < missingKeys.size(); i++) {
+        CacheEntry entry = cacheEntryCodec.decode(values.get(i));
+        if (entry != null) {
+          result.put(missingKeys.get(i), entry.getValue());
+          populateNearCache(missingKeys.get(i), entry, epochs[i]);
+        }
+      }
     } catch (Exception e) {
-      log.error("Error while deleting data from Redis cache: {} ", e.getMessage());
-      return null;
+      log.error("Error while reading data from Redis cache: {} ", e.getMessage());
+    }
+    return result;
+  }
+
+  /**
+   * Writes several versioned entries in one pipelined round trip. Each entry is
+   * compared and set on its own, exactly like {@link #putCache(String, Object, long)}.
+   *
+   * @param entries the values to cache by key, without the Redis key prefix
+   */
+  public void putAll(Map<String, VersionedValue> entries) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    try {
+      Map<String, CacheEntry> serialized = new HashMap<>();
+      for (Map.Entry<String, VersionedValue> entry : entries.entrySet()) {
+        serialized.put(entry.getKey(), newEntry(objectMapper.writeValueAsString(entry.getValue().getValue()),
+            entry.getValue().getVersion(), earlyRefreshDefaultDelta));
+      }
+      Map<String, Long> epochs = new HashMap<>();
+      for (String key : serialized.keySet()) {
+        epochs.put(key, invalidationEpoch(key));
+      }
+      Map<String, Response<Object>> results = new HashMap<>();
+      try (Jedis jedis = jedisPool.getResource()) {
+        Pipeline pipeline = jedis.pipelined();
+        for (Map.Entry<String, CacheEntry> entry : serialized.entrySet()) {
+          results.put(entry.getKey(), pipeline.eval(COMPARE_AND_SET_SCRIPT,
+              Collections.singletonList(redisKey(entry.getKey())),
+              Arrays.asList(cacheEntryCodec.encode(entry.getValue()), bytes(String.valueOf(entry.getValue().getVersion())),
+                  bytes(String.valueOf(cacheTtl)))));
+          if (nearCacheEnabled) {
+            pipeline.publish(invalidationChannel, nodeId + Constants.NEAR_CACHE_MESSAGE_SEPARATOR + entry.getKey());
+          }
+        }
+        pipeline.sync();
+      }
+      for (Map.Entry<String, CacheEntry> entry : serialized.entrySet()) {
+        if (Long.valueOf(1L).equals(results.get(entry.getKey()).get())) {
+          populateNearCache(entry.getKey(), entry.getValue(), epochs.get(entry.getKey()));
+        } else {
+          invalidateNearCache(entry.getKey());
+        }
+      }
+    } catch (Exception e) {
+      entries.keySet().forEach(this::invalidateNearCache);
+      log.error("Error while putting data in Redis cache: {} ", e.getMessage());
+    }
+  }
+
+  /**
+   * Records that the value for the key does not exist. Negative entries live in
+   * their own key namespace with a short TTL, so they never shadow a cached value
+   * and stop hiding the key soon after it comes into existence elsewhere.
+   *
+   * @param key the cache key, without the Redis key prefix
+   */
+  public void putNegativeCache(String key) {
+    try (Jedis jedis = jedisPool.getResource()) {
+      jedis.setex(negativeKey(key), negativeCacheTtl, NEGATIVE_CACHE_MARKER);
+    } catch (Exception e) {
+      log.error("Error while putting negative entry in Redis cache: {} ", e.getMessage());
+    }
+  }
+
+  /**
+   * @param key the cache key, without the Redis key prefix
+   * @return true if the key was recently recorded as not existing
+   */
+  public boolean isNegativeCached(String key) {
+    try (Jedis jedis = jedisPool.getResource()) {
+      return Boolean.TRUE.equals(jedis.exists(negativeKey(key)));
+    } catch (Exception e) {
+      log.error("Error while reading negative entry from Redis cache: {} ", e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Removes the negative entries of the keys, for example once the values exist.
+   *
+   * @param keys the cache keys, without the Redis key prefix
+   */
+  public void deleteNegativeCache(List<String> keys) {
+    if (keys.isEmpty()) {
+      return;
+    }
+    try (Jedis jedis = jedisPool.getResource()) {
+      jedis.del(keys.stream().map(CacheService::negativeKey).toArray(byte[][]::new));
+    } catch (Exception e) {
+      log.error("Error while deleting negative entries from Redis cache: {} ", e.getMessage());
+    }
+  }
+
+  /**
+   * Drops the local copy of a key after another node announced a change to it.
+   * Messages published by this node are ignored because its near cache already
+   * holds the value it just wrote.
+   *
+   * @param message the invalidation message in the form {@code nodeId|key}
+   */
+  public void onInvalidation(String message) {
+    int separator = message.indexOf(Constants.NEAR_CACHE_MESSAGE_SEPARATOR);
+    if (separator < 0) {
+      return;
+    }
+    if (!nodeId.equals(message.substring(0, separator))) {
+      String key = message.substring(separator + 1);
+      invalidateNearCache(key);
+      for (Consumer<String> listener : invalidationListeners) {
+        listener.accept(key);
+      }
+    }
+  }
+
+  /**
+   * Tells the other nodes that the value of a key changed, so that they drop their
+   * in-process copies of it. Unlike the near cache invalidations this is published
+   * whether or not the near cache is enabled.
+   *
+   * @param key the key whose value changed
+   */
+  public void announceInvalidation(String key) {
+    try (Jedis jedis = jedisPool.getResource()) {
+      jedis.publish(invalidationChannel, nodeId + Constants.NEAR_CACHE_MESSAGE_SEPARATOR + key);
+    } catch (Exception e) {
+      log.error("Error while announcing the invalidation of {}: {} ", key, e.getMessage());
+    }
+  }
+
+  /**
+   * @param listener called with every key another node invalidated
+   */
+  public void addInvalidationListener(Consumer<String> listener) {
+    invalidationListeners.add(listener);
+  }
+
+  private long invalidationEpoch(String key) {
+    return invalidationEpochs.get(epochIndex(key));
+  }
+
+  /**
+   * Puts the entry in the near cache, unless the key was invalidated since the epoch was
+   * read. The epoch is checked after the put, and invalidations advance it before
+   * removing the key, so an invalidation racing with the put always wins.
+   */
+  private void populateNearCache(String key, CacheEntry entry, long epoch) {
+    if (!nearCacheEnabled) {
+      return;
+    }
+    nearCache.put(key, entry);
+    if (invalidationEpoch(key) != epoch) {
+      nearCache.invalidate(key);
+    }
+  }
+
+  private void invalidateNearCache(String key) {
+    invalidationEpochs.incrementAndGet(epochIndex(key));
+    nearCache.invalidate(key);
+  }
+
+  private int epochIndex(String key) {
+    return (key.hashCode() & Integer.MAX_VALUE) % invalidationEpochs.length();
+  }
+
+  private CacheEntry newEntry(String value, long version, long delta) {
+    return new CacheEntry(value, version, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(cacheSoftTtl), delta);
+  }
+
+  private static byte[] redisKey(String key) {
+    return bytes(Constants.REDIS_KEY_PREFIX + key);
+  }
+
+  private static byte[] negativeKey(String key) {
+    return redisKey(Constants.NEGATIVE_CACHE_PREFIX + key);
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private void publishInvalidation(Jedis jedis, String key) {
+    if (nearCacheEnabled) {
+      jedis.publish(invalidationChannel, nodeId + Constants.NEAR_CACHE_MESSAGE_SEPARATOR + key);
     }
   }
 }
@@ -0,0 +1,30 @@
+package com.igot.cb.pores.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Receives near cache invalidations published by other nodes and evicts the
+ * matching entry from the local {@link CacheService} near cache.
+ */
+@Component
+@Slf4j
+public class NearCacheInvalidationListener implements MessageListener {
+
+  @Autowired
+  private CacheService cacheService;
+
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    try {
+      cacheService.onInvalidation(new String(message.getBody(), StandardCharsets.UTF_8));
+    } catch (Exception e) {
+      log.error("Error while processing near cache invalidation: {} ", e.getMessage());
+    }
+  }
+}
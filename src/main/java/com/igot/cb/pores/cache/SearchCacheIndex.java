@@ -0,0 +1,142 @@
+package com.igot.cb.pores.cache;
+
+import com.igot.cb.pores.util.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records which cached search pages depend on which tags, for example the ids of
+ * the discussions shown on a page or the filter values that selected them, so that
+ * a write can evict exactly the pages it affects. Every tag is a Redis set holding
+ * the keys of the dependent pages.
+ * <p>
+ * A page is only known to depend on a tag once it has been read, so a write that is
+ * evicted while a page is being read could miss it. Every eviction therefore first
+ * advances a write epoch. Pages are cached with the epoch read before they were
+ * searched, and are dropped again if any eviction started since.
+ */
+@Component
+@Slf4j
+public class SearchCacheIndex {
+
+  @Autowired
+  private JedisPool jedisPool;
+
+  /**
+   * Reads the write epoch, which must be done before searching for a page to cache.
+   *
+   * @return the current write epoch, or -1 if it cannot be read and the page must not be cached
+   */
+  public long currentEpoch() {
+    try (Jedis jedis = jedisPool.getResource()) {
+      return epoch(jedis);
+    } catch (Exception e) {
+      log.error("Error while reading the search cache epoch from Redis: {} ", e.getMessage());
+      return -1;
+    }
+  }
+
+  /**
+   * Registers the page under each tag, stores it, and deletes it again if an eviction
+   * started since the epoch was read. Registering before storing makes sure that any
+   * eviction either finds the page in its tag sets or advanced the epoch before the
+   * page is checked. Tag sets live as long as the newest page registered in them.
+   *
+   * @param pageKey the Redis key of the cached page
+   * @param tags    the tags the page depends on
+   * @param ttl     the time to live of the page in seconds
+   * @param epoch   the write epoch read before the page was searched
+   * @param store   stores the page under its key
+   */
+  public void cache(String pageKey, Collection<String> tags, long ttl, long epoch, Runnable store) {
+    if (epoch < 0) {
+      return;
+    }
+    try (Jedis jedis = jedisPool.getResource()) {
+      if (!tags.isEmpty()) {
+        Pipeline pipeline = jedis.pipelined();
+        for (String tag : tags) {
+          pipeline.sadd(tagKey(tag), pageKey);
+          pipeline.expire(tagKey(tag), ttl);
+        }
+        pipeline.sync();
+      }
+      store.run();
+      if (epoch(jedis) != epoch) {
+        jedis.del(pageKey);
+      }
+    } catch (Exception e) {
+      log.error("Error while caching search page {} in Redis: {} ", pageKey, e.getMessage());
+      evictPage(pageKey);
+    }
+  }
+
+  /**
+   * Advances the write epoch and evicts every page registered under any of the tags.
+   * Only single-key commands are used, so this also works where keys live on different
+   * Redis nodes. The members read are removed from the tag sets one by one instead of
+   * deleting the sets, so a page registered concurrently stays registered; it is
+   * dropped by its own epoch check.
+   *
+   * @param tags the tags affected by a write
+   */
+  public void evict(Collection<String> tags) {
+    if (tags.isEmpty()) {
+      return;
+    }
+    try (Jedis jedis = jedisPool.getResource()) {
+      Pipeline pipeline = jedis.pipelined();
+      pipeline.incr(Constants.SEARCH_CACHE_EPOCH_KEY);
+      Map<String, Response<Set<String>>> members = new HashMap<>();
+      for (String tag : tags) {
+        members.put(tagKey(tag), pipeline.smembers(tagKey(tag)));
+      }
+      pipeline.sync();
+      Set<String> pages = new HashSet<>();
+      for (Response<Set<String>> tagPages : members.values()) {
+        pages.addAll(tagPages.get());
+      }
+      for (String page : pages) {
+        pipeline.del(page);
+      }
+      for (Map.Entry<String, Response<Set<String>>> tagMembers : members.entrySet()) {
+        Set<String> tagPages = tagMembers.getValue().get();
+        if (!tagPages.isEmpty()) {
+          pipeline.srem(tagMembers.getKey(), tagPages.toArray(new String[0]));
+        }
+      }
+      pipeline.sync();
+      log.debug("Evicted {} search pages for tags {}", pages.size(), tags);
+    } catch (Exception e) {
+      log.error("Error while evicting search pages for tags {}: {} ", tags, e.getMessage());
+    }
+  }
+
+  private void evictPage(String pageKey) {
+    try (Jedis jedis = jedisPool.getResource()) {
+      jedis.del(pageKey);
+    } catch (Exception e) {
+      log.error("Error while deleting search page {} from Redis: {} ", pageKey, e.getMessage());
+    }
+  }
+
+  private static long epoch(Jedis jedis) {
+    String epoch = jedis.get(Constants.SEARCH_CACHE_EPOCH_KEY);
+    return epoch != null ? Long.parseLong(epoch) : 0L;
+  }
+
+  private static String tagKey(String tag) {
+    return Constants.SEARCH_CACHE_TAG_PREFIX + tag;
+  }
+}
@@ -0,0 +1,142 @@
+package com.igot.cb.pores.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.igot.cb.pores.elasticsearch.dto.SearchCriteria;
+import com.igot.cb.pores.util.Constants;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Derives search cache keys from {@link SearchCriteria}. The criteria are first
+ * brought into a canonical form, so that requests which only differ in the order
+ * of their filters, facets or requested fields, or in surrounding whitespace of
+ * the search string, share one cache entry. Empty lists of facets or requested
+ * fields are keyed like missing ones, as the search treats them alike. The
+ * canonical form is then hashed into a short key of fixed length. Facets and
+ * exact counts are keyed separately, by the parts of the criteria that select
+ * the matching documents only, as they are the same for every page, sort order
+ * and field selection.
+ */
+@Component
+public class SearchCacheKeyGenerator {
+
+  private final ObjectMapper canonicalMapper = new ObjectMapper()
+      .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+  /**
+   * @param searchCriteria the search request
+   * @return the cache key of the request, including {@link Constants#SEARCH_CACHE_PREFIX}
+   */
+  public String generate(SearchCriteria searchCriteria) {
+    return hash(Constants.SEARCH_CACHE_PREFIX, canonicalize(searchCriteria));
+  }
+
+  /**
+   * @param searchCriteria the search request
+   * @return the cache key of the facets of the request, including
+   *     {@link Constants#SEARCH_FACET_CACHE_PREFIX}
+   */
+  public String generateFacetKey(SearchCriteria searchCriteria) {
+    Map<String, Object> canonical = canonicalizeSelection(searchCriteria);
+    canonical.put("facets", sortedSet(searchCriteria.getFacets()));
+    return hash(Constants.SEARCH_FACET_CACHE_PREFIX, canonical);
+  }
+
+  /**
+   * @param searchCriteria the search request
+   * @return the cache key of the exact number of documents matching the request,
+   *     including {@link Constants#SEARCH_COUNT_CACHE_PREFIX}
+   */
+  public String generateCountKey(SearchCriteria searchCriteria) {
+    return hash(Constants.SEARCH_COUNT_CACHE_PREFIX, canonicalizeSelection(searchCriteria));
+  }
+
+  private String hash(String prefix, Map<String, Object> canonical) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(canonicalMapper.writeValueAsBytes(canonical));
+      return prefix + Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+    } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Unable to generate search cache key", e);
+    }
+  }
+
+  private Map<String, Object> canonicalizeSelection(SearchCriteria searchCriteria) {
+    Map<String, Object> canonical = new LinkedHashMap<>();
+    canonical.put("filterCriteriaMap", canonicalizeValue(searchCriteria.getFilterCriteriaMap()));
+    canonical.put("searchString", searchCriteria.getSearchString() != null ? searchCriteria.getSearchString().trim() : null);
+    canonical.put("query", searchCriteria.getQuery());
+    return canonical;
+  }
+
+  private Map<String, Object> canonicalize(SearchCriteria searchCriteria) {
+    Map<String, Object> canonical = new LinkedHashMap<>();
+    canonical.put("filterCriteriaMap", canonicalizeValue(searchCriteria.getFilterCriteriaMap()));
+    TreeSet<String> requestedFields = sortedSet(searchCriteria.getRequestedFields());
+    canonical.put("requestedFields", requestedFields == null || requestedFields.isEmpty() ? null : requestedFields);
+    canonical.put("projection", searchCriteria.getProjection());
+    canonical.put("pageNumber", searchCriteria.getPageNumber());
+    canonical.put("pageSize", searchCriteria.getPageSize());
+    canonical.put("orderBy", searchCriteria.getOrderBy());
+    canonical.put("orderDirection", searchCriteria.getOrderDirection());
+    canonical.put("searchString", searchCriteria.getSearchString() != null ? searchCriteria.getSearchString().trim() : null);
+    TreeSet<String> facets = sortedSet(searchCriteria.getFacets());
+    canonical.put("facets", facets == null || facets.isEmpty() ? null : facets);
+    canonical.put("query", searchCriteria.getQuery());
+    canonical.put("trackTotalHitsUpTo", searchCriteria.getTrackTotalHitsUpTo());
+    canonical.put("exactTotalCount", searchCriteria.isExactTotalCount());
+    return canonical;
+  }
+
+  /**
+   * Sorts map entries and lists of plain values. Filter values that are lists are
+   * matched as sets of terms, so neither their order nor duplicates change the result.
+   */
+  @SuppressWarnings("unchecked")
+  private Object canonicalizeValue(Object value) {
+    if (value instanceof Map) {
+      Map<String, Object> sorted = new TreeMap<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        sorted.put(String.valueOf(entry.getKey()), canonicalizeValue(entry.getValue()));
+      }
+      return sorted;
+    }
+    if (value instanceof Collection) {
+      List<Object> values = new ArrayList<>();
+      boolean plainValues = true;
+      for (Object element : (Collection<?>) value) {
+        values.add(canonicalizeValue(element));
+        plainValues &= element instanceof String;
+      }
+      if (plainValues) {
+        return new TreeSet<>((Collection<String>) (Collection<?>) values);
+      }
+      return values;
+    }
+    return value;
+  }
+
+  private static TreeSet<String> sortedSet(List<String> values) {
+    if (values == null) {
+      return null;
+    }
+    TreeSet<String> sorted = new TreeSet<>();
+    for (String value : values) {
+      if (value != null) {
+        sorted.add(value);
+      }
+    }
+    return sorted;
+  }
+}
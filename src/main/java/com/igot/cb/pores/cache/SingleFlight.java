@@ -0,0 +1,57 @@
+package com.igot.cb.pores.cache;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the loader
+ * and every caller that arrives while it is still running waits for and shares
+ * its result instead of running the loader again.
+ */
+@Component
+public class SingleFlight {
+
+  private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Runs the loader for the key unless a load for the same key is already in
+   * progress, in which case the result of that load is returned.
+   *
+   * @param key    the key identifying the load
+   * @param loader the loader to run when no load for the key is in progress
+   * @return the loaded value, which may be shared with other callers
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T execute(String key, Supplier<T> loader) {
+    CompletableFuture<Object> call = new CompletableFuture<>();
+    CompletableFuture<Object> existing = inFlight.putIfAbsent(key, call);
+    if (existing != null) {
+      return (T) await(existing);
+    }
+    try {
+      T value = loader.get();
+      call.complete(value);
+      return value;
+    } catch (RuntimeException e) {
+      call.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, call);
+    }
+  }
+
+  private Object await(CompletableFuture<Object> call) {
+    try {
+      return call.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+}
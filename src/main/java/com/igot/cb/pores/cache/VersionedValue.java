@@ -0,0 +1,17 @@
+package com.igot.cb.pores.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A value to be cached together with its version, for example the last modified
+ * time of the entity it was read from.
+ */
+@Getter
+@AllArgsConstructor
+public class VersionedValue {
+
+  private final Object value;
+
+  private final long version;
+}
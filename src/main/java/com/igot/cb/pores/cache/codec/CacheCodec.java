@@ -0,0 +1,20 @@
+package com.igot.cb.pores.cache.codec;
+
+import java.io.IOException;
+
+/**
+ * Converts cached JSON documents to and from the byte format they are stored in.
+ * Each codec is identified by a format byte written in front of every entry, so
+ * entries written with different codecs can be read side by side.
+ */
+public interface CacheCodec {
+
+  /**
+   * @return the lower case letter identifying this codec in the entry header
+   */
+  char format();
+
+  byte[] encode(String json) throws IOException;
+
+  String decode(byte[] payload) throws IOException;
+}
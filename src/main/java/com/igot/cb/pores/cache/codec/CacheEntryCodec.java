@@ -0,0 +1,114 @@
+package com.igot.cb.pores.cache.codec;
+
+import com.igot.cb.pores.cache.CacheEntry;
+import net.jpountz.lz4.LZ4CompressorWithLength;
+import net.jpountz.lz4.LZ4DecompressorWithLength;
+import net.jpountz.lz4.LZ4Factory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lays out {@link CacheEntry} instances as Redis values.
+ * <p>
+ * Entries are stored as an ASCII header {@code ~<format><version>|<softExpiry>|<delta>|}
+ * followed by the payload written by the {@link CacheCodec} named by the format byte.
+ * An upper case format byte means the payload is additionally LZ4 compressed, which
+ * is done for payloads above the configured threshold. Values without a header are
+ * plain JSON written before the header existed, and headers without a format byte
+ * hold JSON as well, so every entry written so far stays readable while the write
+ * codec changes.
+ */
+public class CacheEntryCodec {
+
+  private static final byte HEADER_MARKER = '~';
+  private static final byte SEPARATOR = '|';
+  private static final int MAX_DIGITS = 18;
+
+  private final CacheCodec writeCodec;
+  private final int compressionThreshold;
+  private final Map<Character, CacheCodec> readCodecs = new HashMap<>();
+  private final LZ4CompressorWithLength compressor = new LZ4CompressorWithLength(LZ4Factory.fastestInstance().fastCompressor());
+  private final LZ4DecompressorWithLength decompressor = new LZ4DecompressorWithLength(LZ4Factory.fastestInstance().fastDecompressor());
+
+  /**
+   * @param writeCodec           the codec new entries are written with
+   * @param compressionThreshold payload size in bytes above which payloads are compressed, 0 to disable
+   * @param readCodecs           every codec entries may have been written with
+   */
+  public CacheEntryCodec(CacheCodec writeCodec, int compressionThreshold, CacheCodec... readCodecs) {
+    this.writeCodec = writeCodec;
+    this.compressionThreshold = compressionThreshold;
+    for (CacheCodec codec : readCodecs) {
+      this.readCodecs.put(codec.format(), codec);
+    }
+    this.readCodecs.put(writeCodec.format(), writeCodec);
+  }
+
+  public byte[] encode(CacheEntry entry) throws IOException {
+    byte[] payload = writeCodec.encode(entry.getValue());
+    char format = writeCodec.format();
+    if (compressionThreshold > 0 && payload.length > compressionThreshold) {
+      payload = compressor.compress(payload);
+      format = Character.toUpperCase(format);
+    }
+    byte[] header = ((char) HEADER_MARKER + String.valueOf(format) + entry.getVersion() + (char) SEPARATOR
+        + entry.getSoftExpiry() + (char) SEPARATOR + entry.getDelta() + (char) SEPARATOR)
+        .getBytes(StandardCharsets.US_ASCII);
+    byte[] data = Arrays.copyOf(header, header.length + payload.length);
+    System.arraycopy(payload, 0, data, header.length, payload.length);
+    return data;
+  }
+
+  /**
+   * @param data the Redis value, may be null
+   * @return the entry, or null if there is no value
+   * @throws IOException if the header is malformed or the payload cannot be read
+   */
+  public CacheEntry decode(byte[] data) throws IOException {
+    if (data == null) {
+      return null;
+    }
+    if (data.length < 2 || data[0] != HEADER_MARKER) {
+      return new CacheEntry(new String(data, StandardCharsets.UTF_8), 0L, 0L, 0L);
+    }
+    char format = JsonCacheCodec.FORMAT;
+    int position = 1;
+    if (Character.isLetter((char) data[position])) {
+      format = (char) data[position++];
+    }
+    long[] fields = new long[3];
+    for (int i = 0; i < fields.length; i++) {
+      int start = position;
+      long number = 0;
+      while (position < data.length && data[position] != SEPARATOR) {
+        if (data[position] < '0' || data[position] > '9' || position - start >= MAX_DIGITS) {
+          throw new IOException("Malformed cache entry header at byte " + position);
+        }
+        number = number * 10 + (data[position++] - '0');
+      }
+      if (position == data.length || position == start) {
+        throw new IOException("Malformed cache entry header at byte " + position);
+      }
+      fields[i] = number;
+      position++;
+    }
+    byte[] payload = Arrays.copyOfRange(data, position, data.length);
+    if (Character.isUpperCase(format)) {
+      try {
+        payload = decompressor.decompress(payload);
+      } catch (RuntimeException e) {
+        throw new IOException("Corrupt compressed cache entry payload", e);
+      }
+      format = Character.toLowerCase(format);
+    }
+    CacheCodec codec = readCodecs.get(format);
+    if (codec == null) {
+      throw new IOException("Unknown cache entry format " + format);
+    }
+    return new CacheEntry(codec.decode(payload), fields[0], fields[1], fields[2]);
+  }
+}
@@ -0,0 +1,26 @@
+package com.igot.cb.pores.cache.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores documents as plain UTF-8 JSON text.
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+  public static final char FORMAT = 'j';
+
+  @Override
+  public char format() {
+    return FORMAT;
+  }
+
+  @Override
+  public byte[] encode(String json) {
+    return json.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String decode(byte[] payload) {
+    return new String(payload, StandardCharsets.UTF_8);
+  }
+}
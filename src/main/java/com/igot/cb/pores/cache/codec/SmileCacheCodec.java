@@ -0,0 +1,49 @@
+package com.igot.cb.pores.cache.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Stores documents in the Jackson Smile binary JSON format. Documents are streamed
+ * token by token between JSON text and Smile without building a tree or map.
+ */
+public class SmileCacheCodec implements CacheCodec {
+
+  public static final char FORMAT = 's';
+
+  private final JsonFactory jsonFactory = new JsonFactory();
+  private final SmileFactory smileFactory = new SmileFactory();
+
+  @Override
+  public char format() {
+    return FORMAT;
+  }
+
+  @Override
+  public byte[] encode(String json) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(json.length() / 2 + 16);
+    try (JsonParser parser = jsonFactory.createParser(json);
+         JsonGenerator generator = smileFactory.createGenerator(out)) {
+      parser.nextToken();
+      generator.copyCurrentStructure(parser);
+    }
+    return out.toByteArray();
+  }
+
+  @Override
+  public String decode(byte[] payload) throws IOException {
+    StringWriter out = new StringWriter(payload.length * 2);
+    try (JsonParser parser = smileFactory.createParser(payload);
+         JsonGenerator generator = jsonFactory.createGenerator(out)) {
+      parser.nextToken();
+      generator.copyCurrentStructure(parser);
+    }
+    return out.toString();
+  }
+}
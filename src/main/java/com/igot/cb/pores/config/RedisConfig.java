@@ -1,11 +1,18 @@
 package com.igot.cb.pores.config;
 
+import com.igot.cb.pores.cache.NearCacheInvalidationListener;
+import com.igot.cb.pores.cache.codec.CacheCodec;
+import com.igot.cb.pores.cache.codec.CacheEntryCodec;
+import com.igot.cb.pores.cache.codec.JsonCacheCodec;
+import com.igot.cb.pores.cache.codec.SmileCacheCodec;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
@@ -22,6 +29,15 @@ public class RedisConfig {
   @Value("${spring.redis.port}")
   private int redisPort;
 
+  @Value("${spring.redis.nearCache.invalidationChannel}")
+  private String invalidationChannel;
+
+  @Value("${spring.redis.cacheCodec}")
+  private String cacheCodec;
+
+  @Value("${spring.redis.cacheCompressionThreshold}")
+  private int cacheCompressionThreshold;
+
   @Bean
   public JedisPool jedisPool() {
     JedisPoolConfig poolConfig = new JedisPoolConfig();
@@ -46,4 +62,21 @@ public class RedisConfig {
     redisTemplate.setValueSerializer(new StringRedisSerializer()); // Configure as needed for Object
     return redisTemplate;
   }
+
+  @Bean
+  public CacheEntryCodec cacheEntryCodec() {
+    CacheCodec json = new JsonCacheCodec();
+    CacheCodec smile = new SmileCacheCodec();
+    CacheCodec writeCodec = "smile".equalsIgnoreCase(cacheCodec) ? smile : json;
+    return new CacheEntryCodec(writeCodec, cacheCompressionThreshold, json, smile);
+  }
+
+  @Bean
+  public RedisMessageListenerContainer nearCacheInvalidationContainer(RedisConnectionFactory connectionFactory,
+      NearCacheInvalidationListener listener) {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(connectionFactory);
+    container.addMessageListener(listener, new ChannelTopic(invalidationChannel));
+    return container;
+  }
 }
@@ -0,0 +1,31 @@
+package com.igot.cb.pores.elasticsearch.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Which parts of a search hit a view needs: the {@code _source} fields fetched from
+ * Elasticsearch and the enrichment steps run on the hits afterwards.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class ProjectionProfile {
+
+  /** Source fields to fetch; all fields when empty. */
+  private List<String> includes = new ArrayList<>();
+
+  /** Source fields never to fetch. */
+  private List<String> excludes = new ArrayList<>();
+
+  /** Enrichment steps to run on the hits, for example {@code author}. */
+  private List<String> enrichments = new ArrayList<>();
+
+  public boolean hasEnrichment(String enrichment) {
+    return enrichments.contains(enrichment);
+  }
+}
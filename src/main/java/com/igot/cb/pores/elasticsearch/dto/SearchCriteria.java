@@ -19,6 +19,12 @@ public class SearchCriteria {
 
     private List<String> requestedFields;
 
+    /**
+     * Name of the projection profile selecting the source fields, when no requestedFields
+     * are given, and the enrichment steps run on the hits.
+     */
+    private String projection;
+
     private int pageNumber;
 
     private int pageSize;
@@ -32,4 +38,25 @@ public class SearchCriteria {
     private List<String> facets;
 
     private Map<String, Object> query;
+
+    /**
+     * Pages with a point in time and search_after instead of from/size when true;
+     * later pages are requested by passing the returned cursor.
+     */
+    private boolean cursorPagination;
+
+    private String cursor;
+
+    /**
+     * Counts matching documents exactly up to this many only, beyond which the total
+     * count is a lower bound. Defaults to elasticsearch.search.trackTotalHitsUpTo, which
+     * keeps every count exact unless a caller opts into a lower limit.
+     */
+    private Integer trackTotalHitsUpTo;
+
+    /**
+     * Resolves the exact total count when it exceeds {@link #trackTotalHitsUpTo}, from
+     * a separately cached count.
+     */
+    private boolean exactTotalCount;
 }
@@ -19,4 +19,8 @@ public class SearchResult implements Serializable {
   private JsonNode data;
   private Map<String, List<FacetDTO>> facets;
   private long totalCount;
+  /** False when totalCount is only a lower bound of the number of matching documents. */
+  private boolean totalCountExact;
+  /** Cursor of the next page in cursor pagination, null on the last page. */
+  private String nextCursor;
 }
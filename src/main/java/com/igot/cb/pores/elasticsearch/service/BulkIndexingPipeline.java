@@ -0,0 +1,250 @@
+package com.igot.cb.pores.elasticsearch.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Batches index requests into bulk requests. Requests wait in a bounded in-process
+ * queue until enough of them, or enough bytes, are pending or the flush interval
+ * elapses. A request for a document that is still waiting replaces the waiting one,
+ * so only the latest version of a document is sent. Bulk requests are sent by a
+ * single thread, one at a time, which keeps successive versions of a document in
+ * order. They do not force a refresh but wait for the next one, so the future of a
+ * request completes only once its document is searchable; requests queued meanwhile
+ * go out together in the following bulk. Bulks rejected because the cluster is
+ * overloaded, or that fail altogether, are retried with exponential backoff.
+ */
+@Component
+@Slf4j
+public class BulkIndexingPipeline {
+
+  @Autowired
+  private RestHighLevelClient elasticsearchClient;
+
+  @Value("${elasticsearch.bulk.queueCapacity}")
+  private int queueCapacity;
+
+  @Value("${elasticsearch.bulk.maxActions}")
+  private int maxActions;
+
+  @Value("${elasticsearch.bulk.maxSizeInBytes}")
+  private long maxSizeInBytes;
+
+  @Value("${elasticsearch.bulk.flushInterval}")
+  private long flushInterval;
+
+  @Value("${elasticsearch.bulk.maxRetries}")
+  private int maxRetries;
+
+  @Value("${elasticsearch.bulk.initialBackoff}")
+  private long initialBackoff;
+
+  @Value("${elasticsearch.bulk.offerTimeout}")
+  private long offerTimeout;
+
+  /** Waiting requests by index and document id, guarded by itself. */
+  private final Map<String, PendingRequest> pending = new LinkedHashMap<>();
+
+  private long pendingBytes;
+
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+  private ScheduledExecutorService flusher;
+
+  @PostConstruct
+  public void init() {
+    flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "es-bulk-indexer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    flusher.execute(this::flush);
+    flusher.shutdown();
+    if (!flusher.awaitTermination(30, TimeUnit.SECONDS)) {
+      log.warn("BulkIndexingPipeline::shutdown: pending index requests were not flushed in time");
+    }
+  }
+
+  /**
+   * Queues the request, waiting at most the offer timeout for room if the queue is full.
+   *
+   * @param request the index request; it must not carry a refresh policy of its own
+   * @return completes with the status of the bulk item once the document is searchable,
+   *     or exceptionally if the queue stayed full or indexing failed
+   */
+  public CompletableFuture<RestStatus> submit(IndexRequest request) {
+    String key = request.index() + "/" + request.id();
+    long size = request.source().length();
+    CompletableFuture<RestStatus> future;
+    boolean flushNow;
+    synchronized (pending) {
+      try {
+        long deadline = System.currentTimeMillis() + offerTimeout;
+        while (pending.size() >= queueCapacity && !pending.containsKey(key)) {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) {
+            return failedFuture(new RejectedExecutionException("Bulk indexing queue is full"));
+          }
+          pending.wait(remaining);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return failedFuture(e);
+      }
+      PendingRequest waiting = pending.get(key);
+      if (waiting != null) {
+        pendingBytes += size - waiting.size;
+        waiting.request = request;
+        waiting.size = size;
+        future = waiting.future;
+      } else {
+        PendingRequest pendingRequest = new PendingRequest(request, size);
+        pending.put(key, pendingRequest);
+        pendingBytes += size;
+        future = pendingRequest.future;
+      }
+      flushNow = pending.size() >= maxActions || pendingBytes >= maxSizeInBytes;
+    }
+    if (flushNow && flushRequested.compareAndSet(false, true)) {
+      flusher.execute(this::flush);
+    }
+    return future;
+  }
+
+  private void flush() {
+    flushRequested.set(false);
+    try {
+      List<PendingRequest> batch;
+      while (!(batch = nextBatch()).isEmpty()) {
+        send(batch);
+      }
+    } catch (Exception e) {
+      log.error("BulkIndexingPipeline::flush: failed to flush index requests: {}", e.getMessage(), e);
+    }
+  }
+
+  private List<PendingRequest> nextBatch() {
+    synchronized (pending) {
+      List<PendingRequest> batch = new ArrayList<>();
+      long batchBytes = 0;
+      Iterator<PendingRequest> iterator = pending.values().iterator();
+      while (iterator.hasNext() && batch.size() < maxActions && batchBytes < maxSizeInBytes) {
+        PendingRequest pendingRequest = iterator.next();
+        iterator.remove();
+        batch.add(pendingRequest);
+        batchBytes += pendingRequest.size;
+      }
+      pendingBytes -= batchBytes;
+      pending.notifyAll();
+      return batch;
+    }
+  }
+
+  /**
+   * Sends the batch, retrying what failed. Every future of the batch is completed when
+   * this returns, exceptionally if its document was not indexed.
+   */
+  private void send(List<PendingRequest> batch) {
+    List<PendingRequest> remaining = batch;
+    try {
+      for (int attempt = 0; ; attempt++) {
+        BulkRequest bulkRequest = new BulkRequest().setRefreshPolicy(WriteRequest.RefreshPolicy.WAIT_UNTIL);
+        remaining.forEach(pendingRequest -> bulkRequest.add(pendingRequest.request));
+        List<PendingRequest> retries = new ArrayList<>();
+        String failure;
+        try {
+          BulkResponse bulkResponse = elasticsearchClient.bulk(bulkRequest, RequestOptions.DEFAULT);
+          BulkItemResponse[] items = bulkResponse.getItems();
+          for (int i = 0; i < items.length; i++) {
+            PendingRequest pendingRequest = remaining.get(i);
+            if (!items[i].isFailed()) {
+              pendingRequest.acknowledged = true;
+              pendingRequest.future.complete(items[i].status());
+            } else if (isRetryable(items[i].status())) {
+              retries.add(pendingRequest);
+            } else {
+              pendingRequest.future.completeExceptionally(new IllegalStateException(items[i].getFailureMessage()));
+            }
+          }
+          failure = bulkResponse.buildFailureMessage();
+        } catch (Exception e) {
+          // IOException, and ElasticsearchStatusException for a rejected or failed bulk
+          retries = remaining;
+          failure = e.getMessage();
+        }
+        if (retries.isEmpty()) {
+          return;
+        }
+        if (attempt >= maxRetries) {
+          log.error("BulkIndexingPipeline::send: giving up on {} documents after {} attempts: {}", retries.size(), attempt + 1, failure);
+          IllegalStateException exception = new IllegalStateException("Bulk indexing failed: " + failure);
+          retries.forEach(pendingRequest -> pendingRequest.future.completeExceptionally(exception));
+          return;
+        }
+        Thread.sleep(initialBackoff << attempt);
+        remaining = retries;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      IllegalStateException exception = new IllegalStateException("Bulk indexing did not complete");
+      for (PendingRequest pendingRequest : batch) {
+        if (!pendingRequest.acknowledged) {
+          pendingRequest.future.completeExceptionally(exception);
+        }
+      }
+    }
+  }
+
+  private static <T> CompletableFuture<T> failedFuture(Throwable throwable) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(throwable);
+    return future;
+  }
+
+  private static boolean isRetryable(RestStatus status) {
+    return status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.SERVICE_UNAVAILABLE;
+  }
+
+  private static class PendingRequest {
+    private IndexRequest request;
+    private long size;
+    /** Set by the flusher once the cluster indexed the request. */
+    private boolean acknowledged;
+    private final CompletableFuture<RestStatus> future = new CompletableFuture<>();
+
+    private PendingRequest(IndexRequest request, long size) {
+      this.request = request;
+      this.size = size;
+    }
+  }
+}
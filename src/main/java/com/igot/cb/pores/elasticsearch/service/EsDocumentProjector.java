@@ -0,0 +1,118 @@
+package com.igot.cb.pores.elasticsearch.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes the indexed fields of a document straight into an Elasticsearch request
+ * body. The field mapping files are parsed once into sets of field names. A mapping
+ * read from the file system is parsed again when the file changed, which is checked
+ * at most once per reload interval; a mapping packaged in the jar is never reloaded.
+ */
+@Component
+@Slf4j
+public class EsDocumentProjector {
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Value("${elasticsearch.mapping.reloadInterval}")
+  private long reloadInterval;
+
+  private final Map<String, CompiledMapping> mappings = new ConcurrentHashMap<>();
+
+  /**
+   * @param document    the document to index
+   * @param mappingPath the classpath location of the field mapping file
+   * @return the JSON source holding only the top level fields named in the mapping
+   */
+  public byte[] project(JsonNode document, String mappingPath) throws IOException {
+    Set<String> fields = fields(mappingPath);
+    ByteArrayOutputStream source = new ByteArrayOutputStream();
+    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(source)) {
+      generator.writeStartObject();
+      Iterator<Map.Entry<String, JsonNode>> iterator = document.fields();
+      while (iterator.hasNext()) {
+        Map.Entry<String, JsonNode> field = iterator.next();
+        if (fields.contains(field.getKey())) {
+          generator.writeFieldName(field.getKey());
+          generator.writeTree(field.getValue());
+        }
+      }
+      generator.writeEndObject();
+    }
+    return source.toByteArray();
+  }
+
+  private Set<String> fields(String mappingPath) {
+    CompiledMapping compiled = mappings.get(mappingPath);
+    if (compiled == null || System.currentTimeMillis() >= compiled.nextCheck) {
+      compiled = mappings.compute(mappingPath, this::compile);
+    }
+    return compiled.fields;
+  }
+
+  private CompiledMapping compile(String mappingPath, CompiledMapping current) {
+    long now = System.currentTimeMillis();
+    if (current != null && now < current.nextCheck) {
+      return current;
+    }
+    URL resource = getClass().getResource(mappingPath);
+    if (resource == null) {
+      throw new IllegalStateException("Field mapping " + mappingPath + " not found");
+    }
+    boolean reloadable = "file".equals(resource.getProtocol());
+    long lastModified = reloadable ? lastModified(resource) : 0L;
+    long nextCheck = reloadable ? now + reloadInterval : Long.MAX_VALUE;
+    if (current != null && current.lastModified == lastModified) {
+      return new CompiledMapping(current.fields, lastModified, nextCheck);
+    }
+    try (InputStream mappingStream = resource.openStream()) {
+      Set<String> fields = new HashSet<>();
+      objectMapper.readTree(mappingStream).fieldNames().forEachRemaining(fields::add);
+      log.info("EsDocumentProjector :: compiled field mapping {} with {} fields", mappingPath, fields.size());
+      return new CompiledMapping(Collections.unmodifiableSet(fields), lastModified, nextCheck);
+    } catch (IOException e) {
+      if (current != null) {
+        log.error("Failed to reload field mapping {}, keeping the previous one: {}", mappingPath, e.getMessage());
+        return new CompiledMapping(current.fields, current.lastModified, nextCheck);
+      }
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static long lastModified(URL resource) {
+    try {
+      return new File(resource.toURI()).lastModified();
+    } catch (URISyntaxException e) {
+      return 0L;
+    }
+  }
+
+  @AllArgsConstructor
+  private static class CompiledMapping {
+    private final Set<String> fields;
+    private final long lastModified;
+    private final long nextCheck;
+  }
+}
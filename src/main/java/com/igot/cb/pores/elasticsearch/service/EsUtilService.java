@@ -4,26 +4,84 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.igot.cb.pores.elasticsearch.dto.SearchCriteria;
 import com.igot.cb.pores.elasticsearch.dto.SearchResult;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.script.Script;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public interface EsUtilService {
-  RestStatus addDocument(String esIndexName, String type, String id, Map<String, Object> document, String JsonFilePath);
+  CompletableFuture<RestStatus> addDocument(String esIndexName, String type, String id, JsonNode document, String JsonFilePath);
 
-  RestStatus updateDocument(String index, String indexType, String entityId, Map<String, Object> document, String JsonFilePath);
+  CompletableFuture<RestStatus> updateDocument(String index, String indexType, String entityId, JsonNode document, String JsonFilePath);
 
   void deleteDocument(String documentId, String esIndexName);
 
   void deleteDocumentsByCriteria(String esIndexName, SearchSourceBuilder sourceBuilder);
 
-  SearchResult searchDocuments(String esIndexName, SearchCriteria searchCriteria) throws Exception;
+  /**
+   * @param includeFacets whether to aggregate the facets of the criteria; pass false when
+   *                      the caller already holds them
+   */
+  SearchResult searchDocuments(String esIndexName, SearchCriteria searchCriteria, boolean includeFacets) throws Exception;
+
+  CompletableFuture<SearchResult> searchDocumentsAsync(String esIndexName, SearchCriteria searchCriteria, boolean includeFacets);
+
+  /**
+   * Runs several offset paged searches in one multi search request.
+   *
+   * @param searches            the searches by name
+   * @param withoutFacets       names of the searches whose facets the caller already holds
+   * @return the results by name
+   */
+  CompletableFuture<Map<String, SearchResult>> multiSearchDocumentsAsync(String esIndexName, Map<String, SearchCriteria> searches,
+                                                                        Set<String> withoutFacets);
+
+  long countDocuments(String esIndexName, SearchCriteria searchCriteria) throws IOException;
+
+  CompletableFuture<Long> countDocumentsAsync(String esIndexName, SearchCriteria searchCriteria);
+
+  List<String> searchDocumentIds(String esIndexName, QueryBuilder query, SortBuilder<?> sort, int size) throws IOException;
+
+  /**
+   * Starts running the script on every document matching the query as a background
+   * task on the cluster. The updated documents are searchable once the task completed.
+   *
+   * @return the id of the update task
+   */
+  String updateDocumentsByQuery(String esIndexName, QueryBuilder query, Script script) throws IOException;
 
   public boolean isIndexPresent(String indexName);
 
+  boolean createIndex(String indexName, String settingsJsonPath) throws IOException;
+
+  String reindex(String sourceIndex, String targetIndex) throws IOException;
+
+  boolean isTaskCompleted(String taskId) throws IOException;
+
+  /**
+   * @return the number of documents in the index, after refreshing it
+   */
+  long countAllDocuments(String esIndexName) throws IOException;
+
+  /**
+   * @return the indices the alias points to, empty if the alias does not exist
+   */
+  Set<String> getAliasIndices(String alias) throws IOException;
+
+  /**
+   * Points the alias at toIndex, and in the same atomic step away from fromIndex.
+   *
+   * @param fromIndex the index the alias points to now, or null if it does not exist yet
+   */
+  void switchAlias(String alias, String fromIndex, String toIndex) throws IOException;
+
   public BulkResponse saveAll(String esIndexName, String type, List<JsonNode> entities) throws IOException;
 
 }
@@ -5,43 +5,71 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.igot.cb.pores.elasticsearch.config.EsConfig;
 import com.igot.cb.pores.elasticsearch.dto.FacetDTO;
+import com.igot.cb.pores.elasticsearch.dto.ProjectionProfile;
 import com.igot.cb.pores.elasticsearch.dto.SearchCriteria;
 import com.igot.cb.pores.elasticsearch.dto.SearchResult;
 import com.igot.cb.pores.exceptions.CustomException;
+import com.igot.cb.pores.util.CbServerProperties;
 import com.igot.cb.pores.util.Constants;
-import com.networknt.schema.JsonSchemaFactory;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.ElasticsearchStatusException;
 import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.ClosePointInTimeRequest;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.OpenPointInTimeRequest;
+import org.elasticsearch.action.search.OpenPointInTimeResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.support.WriteRequest;
 import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.GetAliasesResponse;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.tasks.GetTaskRequest;
+import org.elasticsearch.client.tasks.GetTaskResponse;
+import org.elasticsearch.client.tasks.TaskSubmissionResponse;
+import org.elasticsearch.core.TimeValue;
 import org.elasticsearch.index.query.*;
+import org.elasticsearch.index.reindex.ReindexRequest;
+import org.elasticsearch.index.reindex.UpdateByQueryRequest;
 import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.script.Script;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.xcontent.XContentType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -55,6 +83,34 @@ public class EsUtilServiceImpl implements EsUtilService {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private BulkIndexingPipeline bulkIndexingPipeline;
+
+    @Autowired
+    private EsDocumentProjector esDocumentProjector;
+
+    @Autowired
+    private ProjectionProfiles projectionProfiles;
+
+    @Value("${elasticsearch.pit.keepAlive}")
+    private String pointInTimeKeepAlive;
+
+    @Value("${elasticsearch.search.trackTotalHitsUpTo}")
+    private int defaultTrackTotalHitsUpTo;
+
+    @Autowired
+    private CbServerProperties cbServerProperties;
+
+    @Value("${discussion.entity.migration.pollInterval}")
+    private long aliasCheckInterval;
+
+    /**
+     * Whether the discussion alias points at the index holding the substring grams. Once
+     * it does it stays there, so the alias is only looked up until then.
+     */
+    private volatile boolean substringIndexServed;
+    private volatile long substringIndexCheckedOn;
+
     @Autowired
     public EsUtilServiceImpl(RestHighLevelClient elasticsearchClient, EsConfig esConnection) {
         this.elasticsearchClient = elasticsearchClient;
@@ -63,60 +119,42 @@ public class EsUtilServiceImpl implements EsUtilService {
 
 
     @Override
-    public RestStatus addDocument(
-            String esIndexName, String type, String id, Map<String, Object> document, String JsonFilePath) {
+    public CompletableFuture<RestStatus> addDocument(
+            String esIndexName, String type, String id, JsonNode document, String JsonFilePath) {
         log.info("EsUtilServiceImpl :: addDocument");
         try {
-            JsonSchemaFactory schemaFactory = JsonSchemaFactory.getInstance();
-            InputStream schemaStream = schemaFactory.getClass().getResourceAsStream(JsonFilePath);
-            Map<String, Object> map = objectMapper.readValue(schemaStream,
-                    new TypeReference<Map<String, Object>>() {
-                    });
-            Iterator<Entry<String, Object>> iterator = document.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Entry<String, Object> entry = iterator.next();
-                String key = entry.getKey();
-                if (!map.containsKey(key)) {
-                    iterator.remove();
-                }
-            }
             IndexRequest indexRequest =
-                    new IndexRequest(esIndexName, type, id).source(document, XContentType.JSON).setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
-            IndexResponse response = elasticsearchClient.index(indexRequest, RequestOptions.DEFAULT);
-            log.info("EsUtilServiceImpl :: addDocument :Insertion response {}", response.status());
-            return response.status();
+                    new IndexRequest(esIndexName, type, id).source(esDocumentProjector.project(document, JsonFilePath), XContentType.JSON);
+            return bulkIndexingPipeline.submit(indexRequest).whenComplete((status, e) -> {
+                if (e != null) {
+                    log.error("Issue while Indexing to es: {}", e.getMessage());
+                } else {
+                    log.info("EsUtilServiceImpl :: addDocument :Insertion response {}", status);
+                }
+            });
         } catch (Exception e) {
             log.error("Issue while Indexing to es: {}", e.getMessage());
-            return null;
+            return failedFuture(e);
         }
     }
 
+    private static <T> CompletableFuture<T> failedFuture(Throwable throwable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
     @Override
-    public RestStatus updateDocument(
-            String index, String indexType, String entityId, Map<String, Object> updatedDocument, String JsonFilePath) {
+    public CompletableFuture<RestStatus> updateDocument(
+            String index, String indexType, String entityId, JsonNode updatedDocument, String JsonFilePath) {
         try {
-            JsonSchemaFactory schemaFactory = JsonSchemaFactory.getInstance();
-            InputStream schemaStream = schemaFactory.getClass().getResourceAsStream(JsonFilePath);
-            Map<String, Object> map = objectMapper.readValue(schemaStream,
-                    new TypeReference<Map<String, Object>>() {
-                    });
-            Iterator<Entry<String, Object>> iterator = updatedDocument.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Entry<String, Object> entry = iterator.next();
-                String key = entry.getKey();
-                if (!map.containsKey(key)) {
-                    iterator.remove();
-                }
-            }
             IndexRequest indexRequest =
                     new IndexRequest(index)
                             .id(entityId)
-                            .source(updatedDocument)
-                            .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
-            IndexResponse response = elasticsearchClient.index(indexRequest, RequestOptions.DEFAULT);
-            return response.status();
+                            .source(esDocumentProjector.project(updatedDocument, JsonFilePath), XContentType.JSON);
+            return bulkIndexingPipeline.submit(indexRequest);
         } catch (IOException e) {
-            return null;
+            return failedFuture(e);
         }
     }
 
@@ -136,29 +174,156 @@ public class EsUtilServiceImpl implements EsUtilService {
     }
 
     @Override
-    public SearchResult searchDocuments(String esIndexName, SearchCriteria searchCriteria) {
-        SearchSourceBuilder searchSourceBuilder = buildSearchSourceBuilder(searchCriteria);
+    public SearchResult searchDocuments(String esIndexName, SearchCriteria searchCriteria, boolean includeFacets) {
+        if (isCursorSearch(searchCriteria)) {
+            return searchDocumentsAfter(esIndexName, searchCriteria, includeFacets);
+        }
+        SearchSourceBuilder searchSourceBuilder = buildPagedSearchSourceBuilder(searchCriteria, includeFacets);
         SearchRequest searchRequest = new SearchRequest(esIndexName);
         searchRequest.source(searchSourceBuilder);
         try {
-            if (searchSourceBuilder != null) {
-                int pageNumber = searchCriteria.getPageNumber();
-                int pageSize = searchCriteria.getPageSize();
-                int from = pageNumber * pageSize;
-                searchSourceBuilder.from(from);
-                if (pageSize != 0) {
-                    searchSourceBuilder.size(pageSize);
-                }
-            }
             SearchResponse paginatedSearchResponse =
                     elasticsearchClient.search(searchRequest, RequestOptions.DEFAULT);
-            List<Map<String, Object>> paginatedResult = extractPaginatedResult(paginatedSearchResponse);
-            Map<String, List<FacetDTO>> fieldAggregations =
-                    extractFacetData(paginatedSearchResponse, searchCriteria);
-            SearchResult searchResult = new SearchResult();
-            searchResult.setData(objectMapper.valueToTree(paginatedResult));
-            searchResult.setFacets(fieldAggregations);
-            searchResult.setTotalCount(paginatedSearchResponse.getHits().getTotalHits().value);
+            return toSearchResult(paginatedSearchResponse, searchCriteria, includeFacets);
+        } catch (IOException e) {
+            log.error("Error while fetching details from elastic search");
+            return null;
+        }
+    }
+
+    /**
+     * Same as {@link #searchDocuments} on the asynchronous client, so no thread waits
+     * for Elasticsearch. Callbacks chained on the returned future run on the client's
+     * I/O threads unless an executor is passed.
+     */
+    @Override
+    public CompletableFuture<SearchResult> searchDocumentsAsync(String esIndexName, SearchCriteria searchCriteria, boolean includeFacets) {
+        try {
+            if (isCursorSearch(searchCriteria)) {
+                return searchDocumentsAfterAsync(esIndexName, searchCriteria, includeFacets);
+            }
+            SearchSourceBuilder searchSourceBuilder = buildPagedSearchSourceBuilder(searchCriteria, includeFacets);
+            if (searchSourceBuilder == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            SearchRequest searchRequest = new SearchRequest(esIndexName).source(searchSourceBuilder);
+            return this.<SearchResponse>listen(listener ->
+                            elasticsearchClient.searchAsync(searchRequest, RequestOptions.DEFAULT, listener))
+                    .thenApply(searchResponse -> toSearchResult(searchResponse, searchCriteria, includeFacets));
+        } catch (RuntimeException e) {
+            return failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Map<String, SearchResult>> multiSearchDocumentsAsync(String esIndexName, Map<String, SearchCriteria> searches,
+                                                                               Set<String> withoutFacets) {
+        try {
+            List<String> names = new ArrayList<>(searches.keySet());
+            MultiSearchRequest multiSearchRequest = new MultiSearchRequest();
+            for (String name : names) {
+                SearchCriteria searchCriteria = searches.get(name);
+                if (isCursorSearch(searchCriteria)) {
+                    throw new CustomException(Constants.FAILED, Constants.CURSOR_NOT_SUPPORTED_IN_BATCH, HttpStatus.BAD_REQUEST);
+                }
+                SearchSourceBuilder searchSourceBuilder = buildPagedSearchSourceBuilder(searchCriteria, !withoutFacets.contains(name));
+                if (searchSourceBuilder == null) {
+                    throw new CustomException(Constants.FAILED, Constants.SEARCH_CRITERIA_MISSING, HttpStatus.BAD_REQUEST);
+                }
+                multiSearchRequest.add(new SearchRequest(esIndexName).source(searchSourceBuilder));
+            }
+            return this.<MultiSearchResponse>listen(listener ->
+                            elasticsearchClient.msearchAsync(multiSearchRequest, RequestOptions.DEFAULT, listener))
+                    .thenApply(multiSearchResponse -> {
+                        MultiSearchResponse.Item[] items = multiSearchResponse.getResponses();
+                        Map<String, SearchResult> searchResults = new LinkedHashMap<>();
+                        for (int i = 0; i < items.length; i++) {
+                            String name = names.get(i);
+                            if (items[i].isFailure()) {
+                                throw new IllegalStateException("Search " + name + " failed: " + items[i].getFailureMessage());
+                            }
+                            searchResults.put(name, toSearchResult(items[i].getResponse(), searches.get(name), !withoutFacets.contains(name)));
+                        }
+                        return searchResults;
+                    });
+        } catch (RuntimeException e) {
+            return failedFuture(e);
+        }
+    }
+
+    private boolean isCursorSearch(SearchCriteria searchCriteria) {
+        return searchCriteria != null && (searchCriteria.isCursorPagination() || isNotBlank(searchCriteria.getCursor()));
+    }
+
+    private SearchSourceBuilder buildPagedSearchSourceBuilder(SearchCriteria searchCriteria, boolean includeFacets) {
+        SearchSourceBuilder searchSourceBuilder = buildSearchSourceBuilder(searchCriteria, includeFacets);
+        if (searchSourceBuilder != null) {
+            int pageNumber = searchCriteria.getPageNumber();
+            int pageSize = searchCriteria.getPageSize();
+            int from = pageNumber * pageSize;
+            searchSourceBuilder.from(from);
+            if (pageSize != 0) {
+                searchSourceBuilder.size(pageSize);
+            }
+            searchSourceBuilder.trackTotalHitsUpTo(trackTotalHitsUpTo(searchCriteria));
+        }
+        return searchSourceBuilder;
+    }
+
+    /**
+     * Counting every match of a broad query costs as much as visiting every match, so
+     * hits are only counted exactly up to a bound; above it the count is a lower bound.
+     */
+    private int trackTotalHitsUpTo(SearchCriteria searchCriteria) {
+        Integer trackTotalHitsUpTo = searchCriteria.getTrackTotalHitsUpTo();
+        return trackTotalHitsUpTo != null && trackTotalHitsUpTo >= 0 ? trackTotalHitsUpTo : defaultTrackTotalHitsUpTo;
+    }
+
+    private static void setTotalCount(SearchResult searchResult, TotalHits totalHits) {
+        searchResult.setTotalCount(totalHits.value);
+        searchResult.setTotalCountExact(totalHits.relation == TotalHits.Relation.EQUAL_TO);
+    }
+
+    private SearchResult toSearchResult(SearchResponse paginatedSearchResponse, SearchCriteria searchCriteria,
+                                        boolean includeFacets) {
+        List<Map<String, Object>> paginatedResult = extractPaginatedResult(paginatedSearchResponse);
+        Map<String, List<FacetDTO>> fieldAggregations = includeFacets
+                ? extractFacetData(paginatedSearchResponse, searchCriteria) : new HashMap<>();
+        SearchResult searchResult = new SearchResult();
+        searchResult.setData(objectMapper.valueToTree(paginatedResult));
+        searchResult.setFacets(fieldAggregations);
+        setTotalCount(searchResult, paginatedSearchResponse.getHits().getTotalHits());
+        return searchResult;
+    }
+
+    /**
+     * Cursor pagination: the first page opens a point in time and every page continues
+     * after the sort values of the last hit of the previous one, with the discussion id
+     * as tiebreaker. Shards therefore only ever collect one page of hits, however deep
+     * the page is. Facets and the total count are computed on the first page only.
+     */
+    private SearchResult searchDocumentsAfter(String esIndexName, SearchCriteria searchCriteria, boolean includeFacets) {
+        Map<String, Object> cursor = decodeCursor(searchCriteria.getCursor());
+        SearchSourceBuilder searchSourceBuilder = buildCursorSearchSourceBuilder(searchCriteria, cursor, includeFacets);
+        if (searchSourceBuilder == null) {
+            return null;
+        }
+        TimeValue keepAlive = pointInTimeKeepAlive();
+        try {
+            String pointInTimeId;
+            if (cursor == null) {
+                pointInTimeId = elasticsearchClient.openPointInTime(
+                        new OpenPointInTimeRequest(esIndexName).keepAlive(keepAlive), RequestOptions.DEFAULT).getPointInTimeId();
+            } else {
+                pointInTimeId = (String) cursor.get(Constants.SEARCH_CURSOR_PIT);
+            }
+            searchSourceBuilder.pointInTimeBuilder(new PointInTimeBuilder(pointInTimeId).setKeepAlive(keepAlive));
+            SearchResponse searchResponse =
+                    elasticsearchClient.search(new SearchRequest().source(searchSourceBuilder), RequestOptions.DEFAULT);
+            SearchResult searchResult = toCursorSearchResult(searchResponse, searchCriteria, cursor, includeFacets);
+            if (searchResult.getNextCursor() == null) {
+                elasticsearchClient.closePointInTime(new ClosePointInTimeRequest(searchResponse.pointInTimeId()), RequestOptions.DEFAULT);
+            }
             return searchResult;
         } catch (IOException e) {
             log.error("Error while fetching details from elastic search");
@@ -166,6 +331,190 @@ public class EsUtilServiceImpl implements EsUtilService {
         }
     }
 
+    private CompletableFuture<SearchResult> searchDocumentsAfterAsync(String esIndexName, SearchCriteria searchCriteria,
+                                                                      boolean includeFacets) {
+        Map<String, Object> cursor = decodeCursor(searchCriteria.getCursor());
+        SearchSourceBuilder searchSourceBuilder = buildCursorSearchSourceBuilder(searchCriteria, cursor, includeFacets);
+        if (searchSourceBuilder == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        TimeValue keepAlive = pointInTimeKeepAlive();
+        CompletableFuture<String> pointInTime;
+        if (cursor == null) {
+            pointInTime = this.<OpenPointInTimeResponse>listen(listener -> elasticsearchClient.openPointInTimeAsync(
+                            new OpenPointInTimeRequest(esIndexName).keepAlive(keepAlive), RequestOptions.DEFAULT, listener))
+                    .thenApply(OpenPointInTimeResponse::getPointInTimeId);
+        } else {
+            pointInTime = CompletableFuture.completedFuture((String) cursor.get(Constants.SEARCH_CURSOR_PIT));
+        }
+        return pointInTime.thenCompose(pointInTimeId -> {
+            searchSourceBuilder.pointInTimeBuilder(new PointInTimeBuilder(pointInTimeId).setKeepAlive(keepAlive));
+            return this.<SearchResponse>listen(listener -> elasticsearchClient.searchAsync(
+                    new SearchRequest().source(searchSourceBuilder), RequestOptions.DEFAULT, listener));
+        }).thenApply(searchResponse -> {
+            try {
+                SearchResult searchResult = toCursorSearchResult(searchResponse, searchCriteria, cursor, includeFacets);
+                if (searchResult.getNextCursor() == null) {
+                    elasticsearchClient.closePointInTimeAsync(new ClosePointInTimeRequest(searchResponse.pointInTimeId()),
+                            RequestOptions.DEFAULT, ActionListener.wrap(closed -> {
+                            }, e -> log.warn("Failed to close point in time: {}", e.getMessage())));
+                }
+                return searchResult;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private SearchSourceBuilder buildCursorSearchSourceBuilder(SearchCriteria searchCriteria, Map<String, Object> cursor,
+                                                               boolean includeFacets) {
+        SearchSourceBuilder searchSourceBuilder = buildSearchSourceBuilder(searchCriteria, includeFacets && cursor == null);
+        if (searchSourceBuilder == null) {
+            return null;
+        }
+        if (cursor != null) {
+            searchSourceBuilder.searchAfter(((List<?>) cursor.get(Constants.SEARCH_CURSOR_SEARCH_AFTER)).toArray());
+            searchSourceBuilder.trackTotalHits(false);
+        } else {
+            searchSourceBuilder.trackTotalHitsUpTo(trackTotalHitsUpTo(searchCriteria));
+        }
+        searchSourceBuilder.sort(SortBuilders.fieldSort(Constants.DISCUSSION_ID + Constants.KEYWORD).order(SortOrder.ASC));
+        searchSourceBuilder.size(cursorPageSize(searchCriteria));
+        return searchSourceBuilder;
+    }
+
+    private SearchResult toCursorSearchResult(SearchResponse searchResponse, SearchCriteria searchCriteria,
+                                              Map<String, Object> cursor, boolean includeFacets) throws IOException {
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        SearchResult searchResult = new SearchResult();
+        searchResult.setData(objectMapper.valueToTree(extractPaginatedResult(searchResponse)));
+        if (cursor == null) {
+            searchResult.setFacets(includeFacets ? extractFacetData(searchResponse, searchCriteria) : new HashMap<>());
+            setTotalCount(searchResult, searchResponse.getHits().getTotalHits());
+        } else {
+            searchResult.setFacets(new HashMap<>());
+            searchResult.setTotalCount(((Number) cursor.get(Constants.SEARCH_CURSOR_TOTAL_COUNT)).longValue());
+            searchResult.setTotalCountExact(Boolean.TRUE.equals(cursor.get(Constants.SEARCH_CURSOR_TOTAL_COUNT_EXACT)));
+        }
+        if (hits.length == cursorPageSize(searchCriteria)) {
+            searchResult.setNextCursor(encodeCursor(searchResponse.pointInTimeId(),
+                    hits[hits.length - 1].getSortValues(), searchResult.getTotalCount(), searchResult.isTotalCountExact()));
+        }
+        return searchResult;
+    }
+
+    private static int cursorPageSize(SearchCriteria searchCriteria) {
+        return searchCriteria.getPageSize() != 0 ? searchCriteria.getPageSize() : Constants.DEFAULT_SEARCH_PAGE_SIZE;
+    }
+
+    private TimeValue pointInTimeKeepAlive() {
+        return TimeValue.parseTimeValue(pointInTimeKeepAlive, "elasticsearch.pit.keepAlive");
+    }
+
+    /**
+     * Adapts a call of the asynchronous client to a future completed by its listener.
+     */
+    private <T> CompletableFuture<T> listen(Consumer<ActionListener<T>> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        call.accept(ActionListener.wrap(future::complete, future::completeExceptionally));
+        return future;
+    }
+
+    private String encodeCursor(String pointInTimeId, Object[] searchAfter, long totalCount, boolean totalCountExact)
+            throws IOException {
+        Map<String, Object> cursor = new HashMap<>();
+        cursor.put(Constants.SEARCH_CURSOR_PIT, pointInTimeId);
+        cursor.put(Constants.SEARCH_CURSOR_SEARCH_AFTER, searchAfter);
+        cursor.put(Constants.SEARCH_CURSOR_TOTAL_COUNT, totalCount);
+        cursor.put(Constants.SEARCH_CURSOR_TOTAL_COUNT_EXACT, totalCountExact);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(cursor));
+    }
+
+    private Map<String, Object> decodeCursor(String cursor) {
+        if (!isNotBlank(cursor)) {
+            return null;
+        }
+        try {
+            Map<String, Object> decoded = objectMapper.readValue(
+                    new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8),
+                    new TypeReference<Map<String, Object>>() {
+                    });
+            if (!(decoded.get(Constants.SEARCH_CURSOR_PIT) instanceof String)
+                    || !(decoded.get(Constants.SEARCH_CURSOR_SEARCH_AFTER) instanceof List)
+                    || !(decoded.get(Constants.SEARCH_CURSOR_TOTAL_COUNT) instanceof Number)) {
+                throw new IllegalArgumentException("Incomplete cursor");
+            }
+            return decoded;
+        } catch (IllegalArgumentException | IOException e) {
+            throw new CustomException(Constants.FAILED, Constants.INVALID_SEARCH_CURSOR, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Counts every document matching the filters, search string and query of the criteria,
+     * however many there are. The count is a search without hits, so the shards can answer
+     * it from their request cache until the next refresh.
+     */
+    @Override
+    public long countDocuments(String esIndexName, SearchCriteria searchCriteria) throws IOException {
+        return elasticsearchClient.search(buildCountRequest(esIndexName, searchCriteria), RequestOptions.DEFAULT)
+                .getHits().getTotalHits().value;
+    }
+
+    @Override
+    public CompletableFuture<Long> countDocumentsAsync(String esIndexName, SearchCriteria searchCriteria) {
+        try {
+            SearchRequest countRequest = buildCountRequest(esIndexName, searchCriteria);
+            return this.<SearchResponse>listen(listener ->
+                            elasticsearchClient.searchAsync(countRequest, RequestOptions.DEFAULT, listener))
+                    .thenApply(searchResponse -> searchResponse.getHits().getTotalHits().value);
+        } catch (RuntimeException e) {
+            return failedFuture(e);
+        }
+    }
+
+    private SearchRequest buildCountRequest(String esIndexName, SearchCriteria searchCriteria) {
+        SearchSourceBuilder searchSourceBuilder = buildSearchSourceBuilder(searchCriteria, false);
+        if (searchSourceBuilder == null) {
+            throw new CustomException(Constants.FAILED, Constants.SEARCH_CRITERIA_MISSING, HttpStatus.BAD_REQUEST);
+        }
+        searchSourceBuilder.size(0).trackTotalHits(true);
+        return new SearchRequest(esIndexName).source(searchSourceBuilder).requestCache(true);
+    }
+
+    /**
+     * Returns the ids of the first documents matching the query in the given order,
+     * without fetching their source.
+     */
+    @Override
+    public List<String> searchDocumentIds(String esIndexName, QueryBuilder query, SortBuilder<?> sort, int size) throws IOException {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder()
+                .query(query)
+                .sort(sort)
+                .size(size)
+                .fetchSource(false);
+        List<String> ids = new ArrayList<>();
+        for (SearchHit hit : executeSearch(esIndexName, searchSourceBuilder).getHits()) {
+            ids.add(hit.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Documents changed concurrently are skipped rather than failing the whole update,
+     * the caller's next update of them carries its own values anyway.
+     */
+    @Override
+    public String updateDocumentsByQuery(String esIndexName, QueryBuilder query, Script script) throws IOException {
+        UpdateByQueryRequest request = new UpdateByQueryRequest(esIndexName)
+                .setQuery(query)
+                .setScript(script)
+                .setConflicts("proceed")
+                .setRefresh(true);
+        TaskSubmissionResponse response = elasticsearchClient.submitUpdateByQueryTask(request, RequestOptions.DEFAULT);
+        return response.getTask();
+    }
+
     private Map<String, List<FacetDTO>> extractFacetData(
             SearchResponse searchResponse, SearchCriteria searchCriteria) {
         Map<String, List<FacetDTO>> fieldAggregations = new HashMap<>();
@@ -194,7 +543,7 @@ public class EsUtilServiceImpl implements EsUtilService {
         return paginatedResult;
     }
 
-    private SearchSourceBuilder buildSearchSourceBuilder(SearchCriteria searchCriteria) {
+    private SearchSourceBuilder buildSearchSourceBuilder(SearchCriteria searchCriteria, boolean includeFacets) {
         log.info("Building search query");
         if (searchCriteria == null || searchCriteria.toString().isEmpty()) {
             log.error("Search criteria body is missing");
@@ -208,16 +557,56 @@ public class EsUtilServiceImpl implements EsUtilService {
        // addQueryStringToFilter(searchCriteria.getSearchString(), boolQueryBuilder);
         String searchString = searchCriteria.getSearchString();
         if (isNotBlank(searchString)) {
-            QueryBuilder matchPhraseQuery = getMatchPhraseQuery("searchTags.keyword", searchString, true,boolQueryBuilder);
-            boolQueryBuilder.must(matchPhraseQuery);
+            boolQueryBuilder.must(buildSubstringQuery(searchString));
+        }
+        if (includeFacets) {
+            addFacetsToSearchSourceBuilder(searchCriteria.getFacets(), searchSourceBuilder);
         }
-        addFacetsToSearchSourceBuilder(searchCriteria.getFacets(), searchSourceBuilder);
         QueryBuilder queryPart = buildQueryPart(searchCriteria.getQuery());
-        boolQueryBuilder.must(queryPart);
+        if (moveExactMatchesToFilter(queryPart)) {
+            boolQueryBuilder.filter(queryPart);
+        } else if (!(queryPart instanceof MatchAllQueryBuilder)) {
+            boolQueryBuilder.must(queryPart);
+        }
         log.info("final search query result {}", searchSourceBuilder);
         return searchSourceBuilder;
     }
 
+    /**
+     * Moves the must clauses of a bool query that are exact matches into its filter
+     * clauses, recursing into nested bool queries in must. Matching is unchanged, only
+     * the exact matches are no longer scored and become cacheable.
+     *
+     * @return true if the query only holds exact matches, so the caller can move it
+     *         into filter context as a whole
+     */
+    private boolean moveExactMatchesToFilter(QueryBuilder query) {
+        if (query instanceof TermQueryBuilder || query instanceof TermsQueryBuilder
+                || query instanceof RangeQueryBuilder) {
+            return true;
+        }
+        if (!(query instanceof BoolQueryBuilder)) {
+            return false;
+        }
+        BoolQueryBuilder boolQuery = (BoolQueryBuilder) query;
+        List<QueryBuilder> exactMatches = new ArrayList<>();
+        Iterator<QueryBuilder> mustClauses = boolQuery.must().iterator();
+        while (mustClauses.hasNext()) {
+            QueryBuilder mustClause = mustClauses.next();
+            if (moveExactMatchesToFilter(mustClause)) {
+                mustClauses.remove();
+                exactMatches.add(mustClause);
+            }
+        }
+        exactMatches.forEach(boolQuery::filter);
+        return boolQuery.must().isEmpty() && boolQuery.should().isEmpty();
+    }
+
+    /**
+     * Exact matches on the filter fields never contribute to relevance, so they are added
+     * in filter context: they are not scored, and Elasticsearch can cache them per segment
+     * and reuse them across requests.
+     */
     private BoolQueryBuilder buildFilterQuery(Map<String, Object> filterCriteriaMap) {
         BoolQueryBuilder boolQueryBuilder = QueryBuilders.boolQuery();
         List<Map<String, Object>> mustNotConditions = new ArrayList<>();
@@ -228,13 +617,13 @@ public class EsUtilServiceImpl implements EsUtilService {
                         if (field.equals("must_not") && value instanceof ArrayList) {
                             mustNotConditions.addAll((List<Map<String, Object>>) value);
                         } else if (value instanceof Boolean) {
-                            boolQueryBuilder.must(QueryBuilders.termQuery(field, value));
+                            boolQueryBuilder.filter(QueryBuilders.termQuery(field, value));
                         } else if (value instanceof ArrayList) {
-                            boolQueryBuilder.must(
+                            boolQueryBuilder.filter(
                                     QueryBuilders.termsQuery(
                                             field + Constants.KEYWORD, ((ArrayList<?>) value).toArray()));
                         } else if (value instanceof String) {
-                            boolQueryBuilder.must(QueryBuilders.termsQuery(field + Constants.KEYWORD, value));
+                            boolQueryBuilder.filter(QueryBuilders.termsQuery(field + Constants.KEYWORD, value));
                         } else if (value instanceof Map) {
                             Map<String, Object> nestedMap = (Map<String, Object>) value;
                             if (isRangeQuery(nestedMap)) {
@@ -259,16 +648,16 @@ public class EsUtilServiceImpl implements EsUtilService {
                                 });
                                 rangeOrNullQuery.should(rangeQuery);
                                 rangeOrNullQuery.should(QueryBuilders.boolQuery().mustNot(QueryBuilders.existsQuery(field)));
-                                boolQueryBuilder.must(rangeOrNullQuery);
+                                boolQueryBuilder.filter(rangeOrNullQuery);
                             } else {
                                 nestedMap.forEach((nestedField, nestedValue) -> {
                                     String fullPath = field + "." + nestedField;
                                     if (nestedValue instanceof Boolean) {
-                                        boolQueryBuilder.must(QueryBuilders.termQuery(fullPath, nestedValue));
+                                        boolQueryBuilder.filter(QueryBuilders.termQuery(fullPath, nestedValue));
                                     } else if (nestedValue instanceof String) {
-                                        boolQueryBuilder.must(QueryBuilders.termQuery(fullPath + Constants.KEYWORD, nestedValue));
+                                        boolQueryBuilder.filter(QueryBuilders.termQuery(fullPath + Constants.KEYWORD, nestedValue));
                                     } else if (nestedValue instanceof ArrayList) {
-                                        boolQueryBuilder.must(
+                                        boolQueryBuilder.filter(
                                                 QueryBuilders.termsQuery(
                                                         fullPath + Constants.KEYWORD, ((ArrayList<?>) nestedValue).toArray()));
                                     }
@@ -297,18 +686,19 @@ public class EsUtilServiceImpl implements EsUtilService {
 
     private void addRequestedFieldsToSearchSourceBuilder(
             SearchCriteria searchCriteria, SearchSourceBuilder searchSourceBuilder) {
-        if (searchCriteria.getRequestedFields() == null) {
-            // Get all fields in response
-            searchSourceBuilder.fetchSource(null);
+        if (searchCriteria.getRequestedFields() == null || searchCriteria.getRequestedFields().isEmpty()) {
+            ProjectionProfile profile = projectionProfiles.get(searchCriteria.getProjection());
+            searchSourceBuilder.fetchSource(toArrayOrNull(profile.getIncludes()), toArrayOrNull(profile.getExcludes()));
         } else {
-            if (searchCriteria.getRequestedFields().isEmpty()) {
-                log.error("Please specify at least one field to include in the results.");
-            }
             searchSourceBuilder.fetchSource(
                     searchCriteria.getRequestedFields().toArray(new String[0]), null);
         }
     }
 
+    private static String[] toArrayOrNull(List<String> fields) {
+        return fields.isEmpty() ? null : fields.toArray(new String[0]);
+    }
+
     private void addQueryStringToFilter(String searchString, BoolQueryBuilder boolQueryBuilder) {
         if (isNotBlank(searchString)) {
             boolQueryBuilder.must(
@@ -317,19 +707,48 @@ public class EsUtilServiceImpl implements EsUtilService {
         }
     }
 
-    private QueryBuilder getMatchPhraseQuery(String propertyName, String values, boolean match,BoolQueryBuilder boolQueryBuilder) {
-        BoolQueryBuilder queryBuilder = QueryBuilders.boolQuery();
-        if (match) {
-                queryBuilder.should(QueryBuilders
-                        .regexpQuery(propertyName,
-                                ".*" + values.toLowerCase() + ".*"));
-            } else {
-                queryBuilder.mustNot(QueryBuilders
-                        .regexpQuery(propertyName,
-                                ".*" + values.toLowerCase() + ".*"));
-            }
+    /**
+     * Matches the search string anywhere inside the search tags. Every substring of
+     * {@link Constants#SEARCH_TAGS_MIN_NGRAM} to {@link Constants#SEARCH_TAGS_MAX_NGRAM}
+     * characters is indexed as a term, so search strings within that range are a single
+     * term lookup. Longer ones are split into their grams of the maximum length, which
+     * all have to match. Shorter search strings are rejected by the search request
+     * validation.
+     * <p>
+     * While the discussion alias still points at the previous index, which has neither
+     * the grams nor their analyzer, the regular expression that index was searched with
+     * is used instead.
+     */
+    private QueryBuilder buildSubstringQuery(String searchString) {
+        String value = searchString.toLowerCase();
+        if (!isSubstringIndexServed()) {
+            return QueryBuilders.boolQuery()
+                    .should(QueryBuilders.regexpQuery(Constants.SEARCH_TAGS_KEYWORD_FIELD, ".*" + value + ".*"));
+        }
+        if (value.length() <= Constants.SEARCH_TAGS_MAX_NGRAM) {
+            return QueryBuilders.termQuery(Constants.SEARCH_TAGS_NGRAM_FIELD, value);
+        }
+        return QueryBuilders.matchQuery(Constants.SEARCH_TAGS_NGRAM_FIELD, value)
+                .analyzer(Constants.SEARCH_TAGS_MAX_NGRAM_ANALYZER)
+                .operator(Operator.AND);
+    }
 
-        return queryBuilder;
+    private boolean isSubstringIndexServed() {
+        if (substringIndexServed) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now - substringIndexCheckedOn < aliasCheckInterval) {
+            return false;
+        }
+        substringIndexCheckedOn = now;
+        try {
+            substringIndexServed = getAliasIndices(cbServerProperties.getDiscussionEntity())
+                    .contains(cbServerProperties.getDiscussionEntityIndex());
+        } catch (Exception e) {
+            log.warn("EsUtilServiceImpl::isSubstringIndexServed: failed to read the alias: {}", e.getMessage());
+        }
+        return substringIndexServed;
     }
 
     private void addFacetsToSearchSourceBuilder(
@@ -502,6 +921,79 @@ public class EsUtilServiceImpl implements EsUtilService {
         }
     }
 
+    /**
+     * Creates the index with the settings and mappings from the given resource unless
+     * it exists already, also when another node created it concurrently.
+     *
+     * @return true if the index was created
+     */
+    @Override
+    public boolean createIndex(String indexName, String settingsJsonPath) throws IOException {
+        if (isIndexPresent(indexName)) {
+            return false;
+        }
+        try (InputStream settingsStream = getClass().getResourceAsStream(settingsJsonPath)) {
+            CreateIndexRequest request = new CreateIndexRequest(indexName)
+                    .source(objectMapper.writeValueAsString(objectMapper.readTree(settingsStream)), XContentType.JSON);
+            return elasticsearchClient.indices().create(request, RequestOptions.DEFAULT).isAcknowledged();
+        } catch (ElasticsearchStatusException e) {
+            if (e.status() == RestStatus.BAD_REQUEST && e.getMessage().contains("resource_already_exists_exception")) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts copying every document of the source index into the target index as a
+     * background task on the cluster. Documents already present in the target are
+     * overwritten, so an interrupted copy can simply be started again.
+     *
+     * @return the id of the reindex task
+     */
+    @Override
+    public String reindex(String sourceIndex, String targetIndex) throws IOException {
+        ReindexRequest request = new ReindexRequest()
+                .setSourceIndices(sourceIndex)
+                .setDestIndex(targetIndex)
+                .setAbortOnVersionConflict(false);
+        TaskSubmissionResponse response = elasticsearchClient.submitReindexTask(request, RequestOptions.DEFAULT);
+        return response.getTask();
+    }
+
+    @Override
+    public boolean isTaskCompleted(String taskId) throws IOException {
+        int separator = taskId.indexOf(':');
+        GetTaskRequest request = new GetTaskRequest(taskId.substring(0, separator), Long.parseLong(taskId.substring(separator + 1)));
+        Optional<GetTaskResponse> response = elasticsearchClient.tasks().get(request, RequestOptions.DEFAULT);
+        return response.isPresent() && response.get().isCompleted();
+    }
+
+    @Override
+    public long countAllDocuments(String esIndexName) throws IOException {
+        elasticsearchClient.indices().refresh(new RefreshRequest(esIndexName), RequestOptions.DEFAULT);
+        return elasticsearchClient.count(new CountRequest(esIndexName), RequestOptions.DEFAULT).getCount();
+    }
+
+    @Override
+    public Set<String> getAliasIndices(String alias) throws IOException {
+        GetAliasesResponse response = elasticsearchClient.indices().getAlias(new GetAliasesRequest(alias), RequestOptions.DEFAULT);
+        if (response.status() == RestStatus.NOT_FOUND) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(response.getAliases().keySet());
+    }
+
+    @Override
+    public void switchAlias(String alias, String fromIndex, String toIndex) throws IOException {
+        IndicesAliasesRequest request = new IndicesAliasesRequest();
+        if (fromIndex != null) {
+            request.addAliasAction(AliasActions.remove().index(fromIndex).alias(alias));
+        }
+        request.addAliasAction(AliasActions.add().index(toIndex).alias(alias));
+        elasticsearchClient.indices().updateAliases(request, RequestOptions.DEFAULT);
+    }
+
     @Override
     public BulkResponse saveAll(String esIndexName,
         String type,
@@ -0,0 +1,83 @@
+package com.igot.cb.pores.elasticsearch.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.igot.cb.pores.elasticsearch.dto.ProjectionProfile;
+import com.igot.cb.pores.exceptions.CustomException;
+import com.igot.cb.pores.util.Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * The named projection profiles search requests pick from, loaded once from the
+ * profile file. Requests naming no profile get the default one.
+ */
+@Component
+@Slf4j
+public class ProjectionProfiles {
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Value("${elasticsearch.projection.profiles.json.path}")
+  private String profilesJsonPath;
+
+  @Value("${elasticsearch.projection.profile.default}")
+  private String defaultProfile;
+
+  private Map<String, ProjectionProfile> profiles;
+
+  @PostConstruct
+  public void init() throws IOException {
+    try (InputStream profilesStream = getClass().getResourceAsStream(profilesJsonPath)) {
+      if (profilesStream == null) {
+        throw new IllegalStateException("Projection profiles " + profilesJsonPath + " not found");
+      }
+      profiles = objectMapper.readValue(profilesStream, new TypeReference<Map<String, ProjectionProfile>>() {
+      });
+    }
+    if (!profiles.containsKey(defaultProfile)) {
+      throw new IllegalStateException("Default projection profile " + defaultProfile + " is not defined");
+    }
+    profiles.values().forEach(ProjectionProfiles::requireEnrichmentFields);
+    log.info("ProjectionProfiles::init: loaded projection profiles {}", profiles.keySet());
+  }
+
+  /**
+   * @param name the profile named by the request, or null for the default profile
+   * @return the profile
+   * @throws CustomException if there is no profile of that name
+   */
+  public ProjectionProfile get(String name) {
+    ProjectionProfile profile = profiles.get(StringUtils.isBlank(name) ? defaultProfile : name);
+    if (profile == null) {
+      throw new CustomException(Constants.FAILED, String.format(Constants.UNKNOWN_PROJECTION_PROFILE, name), HttpStatus.BAD_REQUEST);
+    }
+    return profile;
+  }
+
+  /**
+   * Cached pages are tagged with the ids of their discussions, and the author enrichment
+   * reads the author id, so a profile listing its fields always fetches those it needs.
+   */
+  private static void requireEnrichmentFields(ProjectionProfile profile) {
+    if (profile.getIncludes().isEmpty()) {
+      return;
+    }
+    if (!profile.getIncludes().contains(Constants.DISCUSSION_ID)) {
+      profile.getIncludes().add(Constants.DISCUSSION_ID);
+    }
+    if (profile.hasEnrichment(Constants.ENRICHMENT_AUTHOR) && !profile.getIncludes().contains(Constants.CREATED_BY)) {
+      profile.getIncludes().add(Constants.CREATED_BY);
+    }
+  }
+}
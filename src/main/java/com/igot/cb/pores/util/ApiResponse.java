@@ -1,5 +1,8 @@
 package com.igot.cb.pores.util;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.util.RawValue;
 import org.springframework.http.HttpStatus;
 
 import java.sql.Timestamp;
@@ -21,6 +24,8 @@ public class ApiResponse {
 
     private transient Map<String, Object> response = new HashMap<>();
 
+    private transient String rawResult;
+
     public ApiResponse() {
         this.ver = "v1";
         this.ts = new Timestamp(System.currentTimeMillis()).toString();
@@ -72,28 +77,63 @@ public class ApiResponse {
         this.responseCode = responseCode;
     }
 
+    /**
+     * Returns the result map to read or modify.
+     *
+     * @throws IllegalStateException if the result was set as raw JSON, which the map
+     *                               does not hold and changes to it would not reach
+     */
+    @JsonIgnore
     public Map<String, Object> getResult() {
+        if (rawResult != null) {
+            throw new IllegalStateException("The result is set as raw JSON");
+        }
         return response;
     }
 
+    /**
+     * Sets the result map, replacing a raw JSON result set before.
+     *
+     * @param result the result map
+     */
+    @JsonIgnore
     public void setResult(Map<String, Object> result) {
+        rawResult = null;
         response = result;
     }
 
+    /**
+     * Sets an already serialized JSON object as the result. It is written into the
+     * response envelope as is, without being parsed into a map first, and replaces
+     * any entries of the result map. The map can no longer be read or modified until
+     * it is set again with {@link #setResult(Map)}.
+     *
+     * @param rawResult the JSON text of the result object
+     */
+    public void setRawResult(String rawResult) {
+        this.rawResult = rawResult;
+        response = new HashMap<>();
+    }
+
+    @JsonProperty("result")
+    public Object getResultBody() {
+        return rawResult != null ? new RawValue(rawResult) : response;
+    }
+
     public Object get(String key) {
-        return response.get(key);
+        return getResult().get(key);
     }
 
     public void put(String key, Object vo) {
-        response.put(key, vo);
+        getResult().put(key, vo);
     }
 
     public void putAll(Map<String, Object> map) {
-        response.putAll(map);
+        getResult().putAll(map);
     }
 
     public boolean containsKey(String key) {
-        return response.containsKey(key);
+        return getResult().containsKey(key);
     }
 
     public String getMessage() {
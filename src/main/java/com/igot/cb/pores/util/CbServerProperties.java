@@ -19,9 +19,51 @@ public class CbServerProperties {
   @Value("${elastic.required.field.discussion.json.path}")
   private String elasticDiscussionJsonPath;
 
+  @Value("${discussion.read.cache.passthrough}")
+  private boolean discussionReadCachePassthrough;
+
+  @Value("${discussion.read.batch.max.size}")
+  private int discussionReadBatchMaxSize;
+
+  @Value("${discussion.cache.warmup.enabled}")
+  private boolean discussionCacheWarmUpEnabled;
+
+  @Value("${discussion.cache.warmup.size}")
+  private int discussionCacheWarmUpSize;
+
+  @Value("${discussion.search.batch.max.size}")
+  private int discussionSearchBatchMaxSize;
+
+  @Value("${discussion.search.async.threads}")
+  private int discussionSearchAsyncThreads;
+
+  @Value("${discussion.search.async.queueCapacity}")
+  private int discussionSearchAsyncQueueCapacity;
+
+  @Value("${discussion.author.snapshot.maxAge}")
+  private long discussionAuthorSnapshotMaxAge;
+
+  @Value("${discussion.author.snapshot.timeout}")
+  private long discussionAuthorSnapshotTimeout;
+
+  @Value("${discussion.search.eviction.threads}")
+  private int discussionSearchEvictionThreads;
+
+  @Value("${discussion.search.eviction.queueCapacity}")
+  private int discussionSearchEvictionQueueCapacity;
+
   @Value("${discussion.entity}")
   private String discussionEntity;
 
+  @Value("${discussion.entity.index}")
+  private String discussionEntityIndex;
+
+  @Value("${discussion.entity.previous}")
+  private String previousDiscussionEntity;
+
+  @Value("${discussion.entity.settings.json.path}")
+  private String discussionEntitySettingsJsonPath;
+
   @Value("${discussion.cloud.folder.name}")
   private String discussionCloudFolderName;
 
@@ -82,6 +82,36 @@ public class Constants {
     public static final String UP = "up";
     public static final String DOWN = "down";
     public static final String DISCUSSION_CACHE_PREFIX = "discussion_";
+    public static final String INVALID_PARENT_CACHE_PREFIX = "invalid_parent_";
+    public static final String NEGATIVE_CACHE_PREFIX = "negative_";
+    public static final String SEARCH_CACHE_PREFIX = "discussion_search_";
+    public static final String SEARCH_FACET_CACHE_PREFIX = "discussion_search_facets_";
+    public static final String SEARCH_COUNT_CACHE_PREFIX = "discussion_search_count_";
+    public static final String SEARCH_CACHE_EPOCH_KEY = "discussion_search_epoch";
+    public static final String INVALID_SEARCH_CURSOR = "Invalid or expired search cursor";
+    public static final String SEARCH_CRITERIA_MISSING = "Search criteria body is missing";
+    public static final String UNKNOWN_PROJECTION_PROFILE = "Unknown projection profile %s";
+    public static final String INVALID_SEARCH_BATCH_SIZE = "A batch search must contain between 1 and %d searches";
+    public static final String CURSOR_NOT_SUPPORTED_IN_BATCH = "Cursor pagination is not supported in a batch search";
+    public static final String ENRICHMENT_AUTHOR = "author";
+    public static final String AUTHOR_SNAPSHOT = "authorSnapshot";
+    public static final String AUTHOR_SNAPSHOT_ON = "authorSnapshotOn";
+    public static final String SEARCH_CURSOR_PIT = "pit";
+    public static final String SEARCH_CURSOR_SEARCH_AFTER = "searchAfter";
+    public static final String SEARCH_CURSOR_TOTAL_COUNT = "totalCount";
+    public static final String SEARCH_CURSOR_TOTAL_COUNT_EXACT = "totalCountExact";
+    public static final int DEFAULT_SEARCH_PAGE_SIZE = 10;
+    public static final String SEARCH_TAGS_NGRAM_FIELD = "searchTags.ngram";
+    public static final String SEARCH_TAGS_KEYWORD_FIELD = "searchTags.keyword";
+    public static final String SEARCH_TAGS_MAX_NGRAM_ANALYZER = "substring_max_gram";
+    public static final int SEARCH_TAGS_MIN_NGRAM = 2;
+    public static final int SEARCH_TAGS_MAX_NGRAM = 20;
+    public static final String SEARCH_CACHE_TAG_PREFIX = "discussion_search_tag_";
+    public static final String SEARCH_TAG_ALL = "all";
+    public static final String SEARCH_TAG_ID = "id:";
+    public static final String SEARCH_TAG_SORT = "sort:";
+    public static final String SEARCH_TAG_AUTHOR = "author:";
+    public static final String SEARCH_TAG_SEPARATOR = ":";
     public static final String ANSWER_POSTS = "answerPosts";
     public static final String VOTETYPE= "voteType";
     public static final String USERID= "userid";
@@ -89,6 +119,7 @@ public class Constants {
     public static final String FAILED_TO_VOTE = "failed to update user vote";
     public static final String USER_ALREADY_VOTED = "User already voted %s";
     public static final String MINIMUM_CHARACTERS_NEEDED= "Minimum 3 characters are required to search";
+    public static final String SEARCH_CAPACITY_EXCEEDED = "Too many searches in progress, please retry";
     public static final String FAILED_TO_DELETE_DISCUSSION = "failed to delete discussion";
     public static final String API_VERSION_1 = "1.0";
     public static final String INVALID_AUTH_TOKEN = "invalid auth token Please supply a valid auth token";
@@ -144,6 +175,12 @@ public class Constants {
     public static final String URL = "url";
     public static final String UPLOAD_FILE = "api.file.upload";
     public static final String DISCUSSION_FILE_EMPTY = "File is empty";
+    public static final String NEAR_CACHE_MESSAGE_SEPARATOR = "|";
+    public static final String DISCUSSION_IDS = "discussionIds";
+    public static final String DISCUSSIONS = "discussions";
+    public static final String INVALID_IDS = "invalidIds";
+    public static final String DISCUSSION_IDS_MISSING = "discussionIds must be a non-empty list of discussion ids";
+    public static final String DISCUSSION_BATCH_LIMIT_EXCEEDED = "A maximum of %d discussionIds can be read in one request";
     private Constants() {
     }
 }
@@ -2,6 +2,7 @@ package com.igot.cb.transactional.cassandrautils;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Mahesh RV
@@ -37,6 +38,15 @@ public interface CassandraOperation {
     public List<Map<String, Object>> getRecordsByPropertiesWithoutFiltering(String keyspaceName, String tableName,
                                                                             Map<String, Object> propertyMap, List<String> fields, Integer limit);
 
+    /**
+     * Same as {@link #getRecordsByPropertiesWithoutFiltering} without blocking the calling
+     * thread while the query runs.
+     *
+     * @return completes with the matching records, or exceptionally if the query failed
+     */
+    public CompletableFuture<List<Map<String, Object>>> getRecordsByPropertiesWithoutFilteringAsync(String keyspaceName, String tableName,
+                                                                                                   Map<String, Object> propertyMap, List<String> fields, Integer limit);
+
     public Map<String,Object> updateRecord(
             String keyspaceName, String tableName, Map<String, Object> request);
 
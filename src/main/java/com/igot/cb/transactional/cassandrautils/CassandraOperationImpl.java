@@ -22,6 +22,7 @@ import com.datastax.driver.core.querybuilder.Update;
 import java.text.MessageFormat;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -160,6 +161,35 @@ public class CassandraOperationImpl implements CassandraOperation {
         return response;
     }
 
+    /**
+     * The records are read in the callback, on a driver I/O thread, so this is only meant
+     * for queries whose result fits into the first page fetched; reading further pages
+     * there would block the thread.
+     */
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> getRecordsByPropertiesWithoutFilteringAsync(String keyspaceName, String tableName, Map<String, Object> propertyMap, List<String> fields, Integer limit) {
+        CompletableFuture<List<Map<String, Object>>> response = new CompletableFuture<>();
+        try {
+            Select selectQuery = processQueryWithoutFiltering(keyspaceName, tableName, propertyMap, fields);
+            if (limit != null) {
+                selectQuery = selectQuery.limit(limit);
+            }
+            ResultSetFuture results = connectionManager.getSession(keyspaceName).executeAsync(selectQuery);
+            results.addListener(() -> {
+                try {
+                    response.complete(CassandraUtil.createResponse(results.getUninterruptibly()));
+                } catch (Exception e) {
+                    logger.error(Constants.EXCEPTION_MSG_FETCH + tableName + " : " + e.getMessage(), e);
+                    response.completeExceptionally(e);
+                }
+            }, Runnable::run);
+        } catch (Exception e) {
+            logger.error(Constants.EXCEPTION_MSG_FETCH + tableName + " : " + e.getMessage(), e);
+            response.completeExceptionally(e);
+        }
+        return response;
+    }
+
     @Override
     public Map<String,Object> updateRecord(
             String keyspaceName, String tableName, Map<String, Object> request) {
@@ -0,0 +1,150 @@
+package com.igot.cb.pores.cache;
+
+import com.igot.cb.pores.elasticsearch.dto.SearchCriteria;
+import com.igot.cb.pores.util.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchCacheKeyGeneratorTest {
+
+  private final SearchCacheKeyGenerator keyGenerator = new SearchCacheKeyGenerator();
+
+  @Test
+  void prefixesKeys() {
+    SearchCriteria criteria = criteria();
+
+    assertTrue(keyGenerator.generate(criteria).startsWith(Constants.SEARCH_CACHE_PREFIX));
+    assertTrue(keyGenerator.generateFacetKey(criteria).startsWith(Constants.SEARCH_FACET_CACHE_PREFIX));
+    assertTrue(keyGenerator.generateCountKey(criteria).startsWith(Constants.SEARCH_COUNT_CACHE_PREFIX));
+  }
+
+  @Test
+  void ignoresOrderOfFilters() {
+    SearchCriteria first = criteria();
+    LinkedHashMap<String, Object> filters = new LinkedHashMap<>();
+    filters.put("isActive", true);
+    filters.put("communityId", "c1");
+    first.setFilterCriteriaMap(filters);
+    SearchCriteria second = criteria();
+    LinkedHashMap<String, Object> permuted = new LinkedHashMap<>();
+    permuted.put("communityId", "c1");
+    permuted.put("isActive", true);
+    second.setFilterCriteriaMap(permuted);
+
+    assertSameKeys(first, second);
+  }
+
+  @Test
+  void ignoresOrderAndDuplicatesOfFilterValues() {
+    SearchCriteria first = criteria();
+    LinkedHashMap<String, Object> filters = new LinkedHashMap<>();
+    filters.put("tags", Arrays.asList("java", "cache", "search"));
+    first.setFilterCriteriaMap(filters);
+    SearchCriteria second = criteria();
+    LinkedHashMap<String, Object> permuted = new LinkedHashMap<>();
+    permuted.put("tags", Arrays.asList("search", "java", "cache", "java"));
+    second.setFilterCriteriaMap(permuted);
+
+    assertSameKeys(first, second);
+  }
+
+  @Test
+  void ignoresOrderOfRequestedFields() {
+    SearchCriteria first = criteria();
+    first.setRequestedFields(Arrays.asList("title", "description", "createdBy"));
+    SearchCriteria second = criteria();
+    second.setRequestedFields(Arrays.asList("createdBy", "title", "description"));
+
+    assertEquals(keyGenerator.generate(first), keyGenerator.generate(second));
+  }
+
+  @Test
+  void keysEmptyRequestedFieldsLikeMissingOnes() {
+    SearchCriteria first = criteria();
+    first.setRequestedFields(null);
+    SearchCriteria second = criteria();
+    second.setRequestedFields(new ArrayList<>());
+
+    assertEquals(keyGenerator.generate(first), keyGenerator.generate(second));
+  }
+
+  @Test
+  void ignoresOrderOfFacets() {
+    SearchCriteria first = criteria();
+    first.setFacets(Arrays.asList("tags", "category"));
+    SearchCriteria second = criteria();
+    second.setFacets(Arrays.asList("category", "tags"));
+
+    assertSameKeys(first, second);
+  }
+
+  @Test
+  void keysEmptyFacetsLikeMissingOnes() {
+    SearchCriteria first = criteria();
+    first.setFacets(null);
+    SearchCriteria second = criteria();
+    second.setFacets(Collections.emptyList());
+
+    assertEquals(keyGenerator.generate(first), keyGenerator.generate(second));
+  }
+
+  @Test
+  void trimsSearchString() {
+    SearchCriteria first = criteria();
+    first.setSearchString("caching");
+    SearchCriteria second = criteria();
+    second.setSearchString("  caching ");
+
+    assertSameKeys(first, second);
+  }
+
+  @Test
+  void separatesDifferentFilterValues() {
+    SearchCriteria first = criteria();
+    LinkedHashMap<String, Object> filters = new LinkedHashMap<>();
+    filters.put("communityId", "c1");
+    first.setFilterCriteriaMap(filters);
+    SearchCriteria second = criteria();
+    LinkedHashMap<String, Object> other = new LinkedHashMap<>();
+    other.put("communityId", "c2");
+    second.setFilterCriteriaMap(other);
+
+    assertNotEquals(keyGenerator.generate(first), keyGenerator.generate(second));
+    assertNotEquals(keyGenerator.generateCountKey(first), keyGenerator.generateCountKey(second));
+  }
+
+  @Test
+  void separatesPagesButSharesFacetsAndCounts() {
+    SearchCriteria first = criteria();
+    first.setPageNumber(0);
+    SearchCriteria second = criteria();
+    second.setPageNumber(1);
+
+    assertNotEquals(keyGenerator.generate(first), keyGenerator.generate(second));
+    assertEquals(keyGenerator.generateFacetKey(first), keyGenerator.generateFacetKey(second));
+    assertEquals(keyGenerator.generateCountKey(first), keyGenerator.generateCountKey(second));
+  }
+
+  private void assertSameKeys(SearchCriteria first, SearchCriteria second) {
+    assertEquals(keyGenerator.generate(first), keyGenerator.generate(second));
+    assertEquals(keyGenerator.generateFacetKey(first), keyGenerator.generateFacetKey(second));
+    assertEquals(keyGenerator.generateCountKey(first), keyGenerator.generateCountKey(second));
+  }
+
+  private static SearchCriteria criteria() {
+    SearchCriteria criteria = new SearchCriteria();
+    criteria.setPageNumber(0);
+    criteria.setPageSize(10);
+    criteria.setOrderBy("createdOn");
+    criteria.setOrderDirection("desc");
+    return criteria;
+  }
+}
@@ -0,0 +1,140 @@
+package com.igot.cb.pores.cache.codec;
+
+import com.igot.cb.pores.cache.CacheEntry;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CacheEntryCodecTest {
+
+  private static final String JSON = "{\"discussionId\":\"d1\",\"tags\":[\"a\",\"b\"],\"upVoteCount\":3,\"isActive\":true}";
+
+  private final CacheEntryCodec jsonCodec = new CacheEntryCodec(new JsonCacheCodec(), 0);
+  private final CacheEntryCodec smileCodec = new CacheEntryCodec(new SmileCacheCodec(), 0, new JsonCacheCodec());
+  private final CacheEntryCodec compressingCodec = new CacheEntryCodec(new SmileCacheCodec(), 64, new JsonCacheCodec());
+
+  @Test
+  void decodesNullAsMissing() throws IOException {
+    assertNull(jsonCodec.decode(null));
+  }
+
+  @Test
+  void readsLegacyJsonWithoutHeader() throws IOException {
+    CacheEntry entry = smileCodec.decode(JSON.getBytes(StandardCharsets.UTF_8));
+
+    assertEntry(JSON, 0L, 0L, 0L, entry);
+  }
+
+  @Test
+  void readsHeaderWithoutFormatAsJson() throws IOException {
+    CacheEntry entry = smileCodec.decode(("~5|100|7|" + JSON).getBytes(StandardCharsets.UTF_8));
+
+    assertEntry(JSON, 5L, 100L, 7L, entry);
+  }
+
+  @Test
+  void roundTripsJson() throws IOException {
+    byte[] data = jsonCodec.encode(new CacheEntry(JSON, 42L, 1700000000000L, 15L));
+
+    assertEquals(JsonCacheCodec.FORMAT, (char) data[1]);
+    assertEntry(JSON, 42L, 1700000000000L, 15L, jsonCodec.decode(data));
+  }
+
+  @Test
+  void roundTripsSmile() throws IOException {
+    byte[] data = smileCodec.encode(new CacheEntry(JSON, 42L, 1700000000000L, 15L));
+
+    assertEquals(SmileCacheCodec.FORMAT, (char) data[1]);
+    assertEntry(JSON, 42L, 1700000000000L, 15L, smileCodec.decode(data));
+  }
+
+  @Test
+  void roundTripsCompressedSmileAboveThreshold() throws IOException {
+    String json = "{\"description\":\"" + StringUtils.repeat("discussion ", 200) + "\"}";
+    byte[] data = compressingCodec.encode(new CacheEntry(json, 1L, 2L, 3L));
+
+    assertEquals(Character.toUpperCase(SmileCacheCodec.FORMAT), (char) data[1]);
+    assertEntry(json, 1L, 2L, 3L, compressingCodec.decode(data));
+  }
+
+  @Test
+  void keepsSmallPayloadsUncompressed() throws IOException {
+    byte[] data = compressingCodec.encode(new CacheEntry("{\"a\":1}", 1L, 2L, 3L));
+
+    assertEquals(SmileCacheCodec.FORMAT, (char) data[1]);
+    assertEntry("{\"a\":1}", 1L, 2L, 3L, compressingCodec.decode(data));
+  }
+
+  @Test
+  void readsJsonEntriesAfterSwitchingToSmile() throws IOException {
+    byte[] data = jsonCodec.encode(new CacheEntry(JSON, 9L, 8L, 7L));
+
+    assertEntry(JSON, 9L, 8L, 7L, smileCodec.decode(data));
+  }
+
+  @Test
+  void rejectsUnknownFormat() {
+    byte[] data = ("~x1|2|3|" + JSON).getBytes(StandardCharsets.UTF_8);
+
+    assertThrows(IOException.class, () -> jsonCodec.decode(data));
+  }
+
+  @Test
+  void rejectsHeaderWithoutSeparator() {
+    byte[] data = "~j123".getBytes(StandardCharsets.US_ASCII);
+
+    assertThrows(IOException.class, () -> jsonCodec.decode(data));
+  }
+
+  @Test
+  void rejectsTruncatedHeader() {
+    byte[] data = "~j1|2|".getBytes(StandardCharsets.US_ASCII);
+
+    assertThrows(IOException.class, () -> jsonCodec.decode(data));
+  }
+
+  @Test
+  void rejectsNonNumericHeaderField() {
+    byte[] data = ("~j1|2x|3|" + JSON).getBytes(StandardCharsets.UTF_8);
+
+    assertThrows(IOException.class, () -> jsonCodec.decode(data));
+  }
+
+  @Test
+  void rejectsEmptyHeaderField() {
+    byte[] data = ("~j1||3|" + JSON).getBytes(StandardCharsets.UTF_8);
+
+    assertThrows(IOException.class, () -> jsonCodec.decode(data));
+  }
+
+  @Test
+  void rejectsOverlongHeaderField() {
+    byte[] data = ("~j1|" + StringUtils.repeat('9', 25) + "|3|" + JSON).getBytes(StandardCharsets.UTF_8);
+
+    assertThrows(IOException.class, () -> jsonCodec.decode(data));
+  }
+
+  @Test
+  void rejectsCorruptCompressedPayload() throws IOException {
+    String json = "{\"description\":\"" + StringUtils.repeat("discussion ", 200) + "\"}";
+    byte[] data = compressingCodec.encode(new CacheEntry(json, 1L, 2L, 3L));
+    byte[] truncated = Arrays.copyOf(data, data.length / 2);
+
+    assertThrows(IOException.class, () -> compressingCodec.decode(truncated));
+  }
+
+  private static void assertEntry(String value, long version, long softExpiry, long delta, CacheEntry entry) {
+    assertEquals(value, entry.getValue());
+    assertEquals(version, entry.getVersion());
+    assertEquals(softExpiry, entry.getSoftExpiry());
+    assertEquals(delta, entry.getDelta());
+  }
+}